@@ -12,4 +12,8 @@ ResourceBundleUtil.override(FeedbackHubImagga_properties, {
   imagga_error_GET_TAGS_FROM_UPLOAD_FAILED: "Tags konnten nicht geladen werden. Imagga hat einen Fehler gemeldet: \"{1}\"",
   imagga_error_ERROR_PROCESSING_JSON: "Imagga ist derzeit nicht verfügbar. Versuchen sie es später noch einmal.",
   imagga_error_NOT_SUPPORTED_FILE_TYPE: "Bitte laden Sie einen gültigen Dateitypen hoch. Imagga unterstützt die Dateitypen \"jpg\" oder \"png\".",
+  imagga_error_IMAGE_PROCESSING_FAILED: "Das Bild konnte nicht für das Hochladen zu Imagga aufbereitet werden. Möglicherweise ist es beschädigt.",
+  imagga_error_TOO_MANY_REQUESTS: "Imagga ist mit zu vielen Anfragen ausgelastet. Bitte versuchen Sie es später noch einmal.",
+  imagga_error_SERVICE_UNAVAILABLE: "Imagga ist derzeit nicht verfügbar. Versuchen sie es später noch einmal.",
+  imagga_error_TIMEOUT: "Imagga hat nicht rechtzeitig geantwortet. Versuchen sie es später noch einmal.",
 });
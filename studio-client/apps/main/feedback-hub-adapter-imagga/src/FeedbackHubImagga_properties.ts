@@ -18,6 +18,10 @@ interface FeedbackHubImagga_properties {
   imagga_error_GET_TAGS_FROM_UPLOAD_FAILED: string;
   imagga_error_ERROR_PROCESSING_JSON: string;
   imagga_error_NOT_SUPPORTED_FILE_TYPE: string;
+  imagga_error_IMAGE_PROCESSING_FAILED: string;
+  imagga_error_TOO_MANY_REQUESTS: string;
+  imagga_error_SERVICE_UNAVAILABLE: string;
+  imagga_error_TIMEOUT: string;
 }
 
 /**
@@ -34,6 +38,10 @@ const FeedbackHubImagga_properties: FeedbackHubImagga_properties = {
   imagga_error_GET_TAGS_FROM_UPLOAD_FAILED: "Request for keywords to Imagga failed. Imagga responded with a problem: \"{1}\"",
   imagga_error_ERROR_PROCESSING_JSON: "Imagga is currently unavailable. Please try again later.",
   imagga_error_NOT_SUPPORTED_FILE_TYPE: "Please upload a valid file type. Imagga supports the file types \"JPG\" or \"PNG\".",
+  imagga_error_IMAGE_PROCESSING_FAILED: "The picture could not be prepared for the upload to Imagga. It may be corrupt.",
+  imagga_error_TOO_MANY_REQUESTS: "Imagga is busy with too many requests. Please try again later.",
+  imagga_error_SERVICE_UNAVAILABLE: "Imagga is currently unavailable. Please try again later.",
+  imagga_error_TIMEOUT: "Imagga did not respond in time. Please try again later.",
 };
 
 export default FeedbackHubImagga_properties;
@@ -0,0 +1,120 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The hit path of the adapter: All results are cached, so that each
+ * invocation only builds and hashes the cache keys and peeks the cache.
+ * <p>
+ * The cache is warmed up with a local fake of Imagga, which is not
+ * involved in the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachedKeywordsBenchmark {
+  @Param({"false", "true"})
+  boolean contentFingerprint;
+
+  private HttpServer imagga;
+  private ImaggaFeedbackHubAdapter adapter;
+  private Blob blob;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    byte[] tags = TagsResponses.tags(100, TagsResponses.languages(1)).getBytes(StandardCharsets.UTF_8);
+    imagga = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    imagga.createContext("/uploads", exchange -> respond(exchange, TagsResponses.UPLOAD_RESPONSE.getBytes(StandardCharsets.UTF_8)));
+    imagga.createContext("/tags", exchange -> respond(exchange, tags));
+    imagga.start();
+
+    String url = "http://localhost:" + imagga.getAddress().getPort();
+    ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(url, "YmVuY2htYXJr")
+            .contentFingerprint(contentFingerprint)
+            .build();
+    Cache cache = new Cache("imagga-benchmark");
+    ImaggaCacheClasses.configure(cache, 1 << 20, 16 << 20);
+    adapter = new ImaggaFeedbackHubAdapter(options, ImaggaAdapterDependencies.builder(HttpClient.newHttpClient()).cache(cache).build());
+    blob = newBlob("benchmark-etag", tags);
+
+    // Warm up the cache.
+    adapter.getKeywords(null, blob, Locale.ENGLISH).toCompletableFuture().join();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    imagga.stop(0);
+  }
+
+  @Benchmark
+  public List<Keyword> getKeywords() {
+    return adapter.getKeywords(null, blob, Locale.ENGLISH).toCompletableFuture().join();
+  }
+
+  private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+    try (InputStream request = exchange.getRequestBody()) {
+      request.transferTo(OutputStream.nullOutputStream());
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream response = exchange.getResponseBody()) {
+      response.write(body);
+    }
+  }
+
+  /**
+   * A blob with the methods the adapter uses.  A proxy, rather than a mock,
+   * so that no mock framework allocates in the measurement.
+   */
+  private static Blob newBlob(String eTag, byte[] content) {
+    return (Blob) Proxy.newProxyInstance(Blob.class.getClassLoader(), new Class<?>[]{Blob.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getETag":
+          return eTag;
+        case "getInputStream":
+          return new ByteArrayInputStream(content);
+        case "findExtension":
+          return Optional.of("jpg");
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "Blob[" + eTag + "]";
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+}
@@ -0,0 +1,83 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Construction and streaming of the multipart upload body, for blob
+ * content of unknown length and for preprocessed images in memory.
+ * <p>
+ * The body is drained like the HttpClient does, so the numbers include the
+ * chunking of the content, but no network time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartBodyBenchmark {
+  @Param({"65536", "1048576"})
+  int imageBytes;
+
+  private byte[] image;
+
+  @Setup
+  public void setUp() {
+    image = new byte[imageBytes];
+    new Random(42).nextBytes(image);
+  }
+
+  @Benchmark
+  public long ofInputStream(Blackhole blackhole) {
+    return drain(MultipartBodyPublisher.ofInputStream("benchmark.jpg", () -> new ByteArrayInputStream(image)), blackhole);
+  }
+
+  @Benchmark
+  public long ofByteArray(Blackhole blackhole) {
+    return drain(MultipartBodyPublisher.ofByteArray("benchmark.jpg", image), blackhole);
+  }
+
+  private static long drain(MultipartBodyPublisher body, Blackhole blackhole) {
+    CompletableFuture<Long> length = new CompletableFuture<>();
+    body.subscribe(new Flow.Subscriber<>() {
+      private long bytes;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(ByteBuffer item) {
+        bytes += item.remaining();
+        blackhole.consume(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        length.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        length.complete(bytes);
+      }
+    });
+    return length.join();
+  }
+}
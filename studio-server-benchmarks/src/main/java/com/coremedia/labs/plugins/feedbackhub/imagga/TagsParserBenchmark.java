@@ -0,0 +1,52 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsing of tags responses, like in the adapter's getKeywordsFromResponse,
+ * from the raw bytes to the keyword lists per language.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagsParserBenchmark {
+  @Param({"50", "200", "500"})
+  int tags;
+
+  @Param({"1", "3"})
+  int languageCount;
+
+  private List<String> languages;
+  private byte[] response;
+
+  @Setup
+  public void setUp() {
+    languages = TagsResponses.languages(languageCount);
+    response = TagsResponses.tags(tags, languages).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Map<String, KeywordList> parseTags() throws IOException {
+    try (Reader body = ImaggaResponseParser.asReader(new ByteArrayInputStream(response))) {
+      return ImaggaResponseParser.parseTags(body, languages);
+    }
+  }
+}
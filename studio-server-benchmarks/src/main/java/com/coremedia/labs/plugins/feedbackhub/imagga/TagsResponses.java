@@ -0,0 +1,53 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates realistic Imagga tags responses.
+ */
+final class TagsResponses {
+  static final String UPLOAD_RESPONSE = "{\"result\":{\"upload_id\":\"i05e132196706b94b1d85efb5f3SaM1j\"},\"status\":{\"text\":\"\",\"type\":\"success\"}}";
+
+  private static final String[] WORDS = {
+          "landscape", "mountain", "sky", "travel", "tourism", "snow", "peak", "valley", "nature", "outdoor",
+          "scenery", "lake", "water", "forest", "tree", "summer", "cloud", "hiking", "rock", "alpine"
+  };
+
+  private TagsResponses() {
+  }
+
+  /**
+   * A tags response with the given number of tags, in descending
+   * confidence, each in all the given languages.
+   */
+  static String tags(int count, List<String> languages) {
+    Random random = new Random(42);
+    StringBuilder json = new StringBuilder("{\"result\":{\"tags\":[");
+    double confidence = 100;
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      confidence -= random.nextDouble() * 99.0 / count;
+      json.append("{\"confidence\":").append(confidence).append(",\"tag\":{");
+      String word = WORDS[i % WORDS.length] + (i / WORDS.length == 0 ? "" : " " + i / WORDS.length);
+      for (int j = 0; j < languages.size(); j++) {
+        if (j > 0) {
+          json.append(',');
+        }
+        json.append('"').append(languages.get(j)).append("\":\"").append(word);
+        if (j > 0) {
+          json.append(" (").append(languages.get(j)).append(')');
+        }
+        json.append('"');
+      }
+      json.append("}}");
+    }
+    return json.append("]},\"status\":{\"text\":\"\",\"type\":\"success\"}}").toString();
+  }
+
+  static List<String> languages(int count) {
+    return List.of("en", "de", "fr", "es", "it").subList(0, count);
+  }
+}
@@ -0,0 +1,40 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A map of shared objects with a bounded number of entries.
+ * <p>
+ * The registries are keyed by settings, which include the basic auth key
+ * and tuning values, so that every settings change and every key rotation
+ * adds an entry.  The least recently used entries are dropped, so that
+ * outdated adapters, HttpClients and their threads can be garbage collected.
+ */
+@DefaultAnnotation(NonNull.class)
+final class BoundedRegistry<K, V> {
+  static final int DEFAULT_MAX_SIZE = 64;
+
+  private final Map<K, V> entries;
+
+  BoundedRegistry(int maxSize) {
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> factory) {
+    return entries.computeIfAbsent(key, factory);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+}
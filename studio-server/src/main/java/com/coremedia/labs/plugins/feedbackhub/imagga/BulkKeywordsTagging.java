@@ -0,0 +1,88 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * Tags many blobs in the background, e.g. after an import.
+ * <p>
+ * The results are cached like the results of interactive requests, so
+ * that editors who open the pictures later get the keywords without
+ * waiting for Imagga.
+ * <p>
+ * The Imagga adapters implement this interface in addition to
+ * {@link com.coremedia.feedbackhub.adapter.keywords.BlobKeywordsFeedbackHubAdapter}.
+ */
+@DefaultAnnotation(NonNull.class)
+public interface BulkKeywordsTagging {
+  /**
+   * Tags the blobs for the given locales.
+   * <p>
+   * At most {@code parallelism} blobs are tagged at a time.  The stream is
+   * consumed lazily, as tagging proceeds, so that a long stream does not
+   * pile up in memory.  Cancelling the result stops consuming the stream.
+   * The stream is not closed.
+   *
+   * @param blobs the blobs
+   * @param locales the locales, or an empty list for the default language
+   * @param parallelism the maximum number of blobs which are tagged concurrently
+   * @param listener receives the progress
+   * @return the result, when all blobs are processed
+   */
+  CompletionStage<Result> tagAll(Stream<Blob> blobs, List<Locale> locales, int parallelism, Listener listener);
+
+  /**
+   * Receives the progress of bulk tagging.
+   * <p>
+   * The methods are invoked concurrently, from the threads which complete
+   * the Imagga requests.  They should return quickly.
+   */
+  interface Listener {
+    /**
+     * @param blob the blob which has been tagged in all locales
+     * @param processed the number of blobs processed so far, including failed ones
+     */
+    default void tagged(Blob blob, int processed) {
+    }
+
+    /**
+     * @param blob the blob which could not be tagged
+     * @param cause the failure, usually a {@link com.coremedia.feedbackhub.adapter.FeedbackHubException}
+     * @param processed the number of blobs processed so far, including failed ones
+     */
+    default void failed(Blob blob, Throwable cause, int processed) {
+    }
+  }
+
+  /**
+   * The outcome of bulk tagging.
+   */
+  final class Result {
+    private final int tagged;
+    private final int failed;
+
+    Result(int tagged, int failed) {
+      this.tagged = tagged;
+      this.failed = failed;
+    }
+
+    public int getTagged() {
+      return tagged;
+    }
+
+    public int getFailed() {
+      return failed;
+    }
+
+    @Override
+    public String toString() {
+      return "Result[tagged=" + tagged + ", failed=" + failed + "]";
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs one bulk tagging, see {@link BulkKeywordsTagging}.
+ * <p>
+ * There are as many workers as the parallelism permits.  A worker takes
+ * the next blob from the iterator only when it is done with the previous
+ * one, so the iterator is consumed no faster than the blobs are tagged.
+ * Workers are not threads but chains of completion callbacks, so that
+ * waiting for Imagga does not block any thread.
+ */
+@DefaultAnnotation(NonNull.class)
+class BulkTagger {
+  private static final Logger LOG = LoggerFactory.getLogger(BulkTagger.class);
+
+  private final Iterator<Blob> blobs;
+  private final Function<Blob, CompletionStage<?>> tagger;
+  private final BulkKeywordsTagging.Listener listener;
+
+  private final CompletableFuture<BulkKeywordsTagging.Result> result = new CompletableFuture<>();
+  private final AtomicInteger tagged = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicInteger activeWorkers = new AtomicInteger();
+
+  /**
+   * @param blobs the blobs to tag
+   * @param tagger tags a single blob
+   * @param listener receives the progress
+   */
+  BulkTagger(Iterator<Blob> blobs, Function<Blob, CompletionStage<?>> tagger, BulkKeywordsTagging.Listener listener) {
+    this.blobs = blobs;
+    this.tagger = tagger;
+    this.listener = listener;
+  }
+
+  CompletableFuture<BulkKeywordsTagging.Result> run(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive, but is " + parallelism);
+    }
+    activeWorkers.set(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      work();
+    }
+    return result;
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  /**
+   * Tags blobs until one is pending, and continues when that one is done.
+   * <p>
+   * Blobs which are done immediately, e.g. because their keywords are
+   * cached, are processed in a loop rather than by recursion, so that long
+   * runs of cached blobs do not overflow the stack.
+   */
+  private void work() {
+    while (true) {
+      Blob blob;
+      try {
+        blob = nextBlob();
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      if (blob == null) {
+        if (activeWorkers.decrementAndGet() == 0) {
+          result.complete(new BulkKeywordsTagging.Result(tagged.get(), failed.get()));
+        }
+        return;
+      }
+      CompletableFuture<?> tagging;
+      try {
+        tagging = tagger.apply(blob).toCompletableFuture();
+      } catch (RuntimeException e) {
+        tagging = CompletableFuture.failedFuture(e);
+      }
+      if (!tagging.isDone()) {
+        tagging.whenComplete((ignored, throwable) -> {
+          report(blob, throwable);
+          work();
+        });
+        return;
+      }
+      report(blob, failureOf(tagging));
+    }
+  }
+
+  @Nullable
+  private synchronized Blob nextBlob() {
+    // Stop consuming the blobs if the result has been cancelled.
+    return !result.isDone() && blobs.hasNext() ? blobs.next() : null;
+  }
+
+  private void report(Blob blob, @Nullable Throwable throwable) {
+    try {
+      if (throwable == null) {
+        tagged.incrementAndGet();
+        listener.tagged(blob, tagged.get() + failed.get());
+      } else {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        LOG.debug("Bulk tagging of the blob with eTag '{}' failed", blob.getETag(), cause);
+        failed.incrementAndGet();
+        listener.failed(blob, cause, tagged.get() + failed.get());
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Bulk tagging listener failed, ignoring", e);
+    }
+  }
+
+  @Nullable
+  private static Throwable failureOf(CompletableFuture<?> done) {
+    try {
+      done.join();
+      return null;
+    } catch (CompletionException | CancellationException e) {
+      return e;
+    }
+  }
+}
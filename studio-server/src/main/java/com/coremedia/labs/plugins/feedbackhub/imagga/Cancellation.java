@@ -0,0 +1,202 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Stage composition which propagates cancellation upstream.
+ * <p>
+ * The stages of CompletableFuture do not cancel the stages they depend on.
+ * If an editor abandons a request, the upload and tags requests would keep
+ * running.  The stages of this class cancel their source stage, and the
+ * stage that they are currently waiting for, when they are cancelled
+ * themselves.  Failures are wrapped in {@link CompletionException}s, like
+ * by CompletableFuture.
+ * <p>
+ * A cancellation by an expired deadline is propagated as
+ * {@link DeadlineExceeded}, so that the circuit breaker can tell it from a
+ * cancellation by the editor.
+ */
+@DefaultAnnotation(NonNull.class)
+final class Cancellation {
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "imagga-deadlines");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private Cancellation() {
+  }
+
+  /**
+   * Like {@link CompletionStage#thenApply(Function)}.
+   */
+  static <T, U> CompletableFuture<U> thenApply(CompletionStage<T> stage, Function<? super T, ? extends U> function) {
+    CompletableFuture<T> source = stage.toCompletableFuture();
+    return propagate(source.thenApply(function), source);
+  }
+
+  /**
+   * Like {@link CompletionStage#thenApplyAsync(Function, Executor)}.
+   *
+   * @param executor the executor of the function, or null for the thread
+   *                 which completes the stage
+   */
+  static <T, U> CompletableFuture<U> thenApply(CompletionStage<T> stage, Function<? super T, ? extends U> function, @Nullable Executor executor) {
+    if (executor == null) {
+      return thenApply(stage, function);
+    }
+    CompletableFuture<T> source = stage.toCompletableFuture();
+    return propagate(source.thenApplyAsync(function, executor), source);
+  }
+
+  /**
+   * Like {@link CompletionStage#thenCompose(Function)}.
+   */
+  static <T, U> CompletableFuture<U> thenCompose(CompletionStage<T> stage, Function<? super T, ? extends CompletionStage<U>> function) {
+    return handleCompose(stage, (value, throwable) -> {
+      if (throwable != null) {
+        throw wrap(throwable);
+      }
+      return function.apply(value);
+    });
+  }
+
+  /**
+   * Like {@link CompletionStage#handle(BiFunction)}, with a function which
+   * returns a further stage.
+   */
+  static <T, U> CompletableFuture<U> handleCompose(CompletionStage<T> stage,
+                                                   BiFunction<? super T, Throwable, ? extends CompletionStage<U>> function) {
+    CompletableFuture<T> source = stage.toCompletableFuture();
+    CompletableFuture<U> result = new CompletableFuture<>();
+    source.whenComplete((value, throwable) -> {
+      if (result.isDone()) {
+        return;
+      }
+      CompletableFuture<U> next;
+      try {
+        next = function.apply(value, throwable).toCompletableFuture();
+      } catch (Throwable t) {
+        result.completeExceptionally(wrap(t));
+        return;
+      }
+      next.whenComplete((nextValue, nextThrowable) -> {
+        if (nextThrowable != null) {
+          result.completeExceptionally(wrap(nextThrowable));
+        } else {
+          result.complete(nextValue);
+        }
+      });
+      propagate(result, next);
+    });
+    return propagate(result, source);
+  }
+
+  /**
+   * Fails the future with the given timeout failure and cancels it with
+   * {@link DeadlineExceeded}, if it does not complete in time.
+   *
+   * @param deadline the time limit, or null for none
+   */
+  static <T> CompletableFuture<T> withDeadline(CompletionStage<T> stage, @Nullable Duration deadline, Supplier<? extends Throwable> timeout) {
+    CompletableFuture<T> work = stage.toCompletableFuture();
+    if (deadline == null || work.isDone()) {
+      return work;
+    }
+    CompletableFuture<T> result = new CompletableFuture<>();
+    ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+      if (result.completeExceptionally(timeout.get())) {
+        work.completeExceptionally(new DeadlineExceeded(deadline));
+      }
+    }, deadline.toNanos(), TimeUnit.NANOSECONDS);
+    work.whenComplete((value, throwable) -> {
+      timer.cancel(false);
+      if (throwable != null) {
+        result.completeExceptionally(throwable);
+      } else {
+        result.complete(value);
+      }
+    });
+    return propagate(result, work);
+  }
+
+  /**
+   * Cancels the source when the derived future is cancelled.
+   *
+   * @return the derived future, for convenience
+   */
+  static <T> CompletableFuture<T> propagate(CompletableFuture<T> derived, CompletableFuture<?> source) {
+    derived.whenComplete((value, throwable) -> {
+      if (derived.isCancelled()) {
+        cancel(source, throwable);
+      }
+    });
+    return derived;
+  }
+
+  /**
+   * Cancels the future for the same reason as the given cancellation, i.e.
+   * by an expired deadline or else plainly.
+   *
+   * @param cancellation the cancellation of a dependent future, or null
+   */
+  static void cancel(CompletableFuture<?> future, @Nullable Throwable cancellation) {
+    Throwable cause = unwrap(cancellation);
+    if (cause instanceof DeadlineExceeded) {
+      future.completeExceptionally(cause);
+    } else {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Whether the failure is a cancellation by an expired deadline.
+   */
+  static boolean isDeadlineExceeded(@Nullable Throwable throwable) {
+    return unwrap(throwable) instanceof DeadlineExceeded;
+  }
+
+  @Nullable
+  private static Throwable unwrap(@Nullable Throwable throwable) {
+    Throwable cause = throwable;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+
+  private static CompletionException wrap(Throwable throwable) {
+    return throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  /**
+   * The cancellation of work whose deadline expired.
+   * <p>
+   * Completing a future with it cancels the future, like
+   * {@link CompletableFuture#cancel(boolean)} does.
+   */
+  static final class DeadlineExceeded extends CancellationException {
+    DeadlineExceeded(Duration deadline) {
+      super("Deadline of " + deadline + " exceeded");
+    }
+  }
+}
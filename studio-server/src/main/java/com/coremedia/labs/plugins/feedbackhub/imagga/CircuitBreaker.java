@@ -0,0 +1,154 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Fails requests fast while Imagga is down or rejects the key.
+ * <p>
+ * The breaker is closed as long as requests succeed.  After the configured
+ * number of consecutive failures, it opens, and requests fail immediately,
+ * without waiting for timeouts.  After the open duration, it is half open
+ * and lets a single probe request pass.  If the probe succeeds, the breaker
+ * closes, otherwise it opens again.
+ * <p>
+ * Failures are I/O errors, including timeouts, server errors (5xx),
+ * rejected keys (401) and requests cancelled by an expired deadline, e.g.
+ * because Imagga accepts the connection but does not respond.  Other
+ * responses are failures of the particular request, but prove that Imagga
+ * is available.  A cancellation by the editor tells nothing about Imagga.
+ * <p>
+ * Instances are shared by all adapters with the same URL and key.
+ */
+@DefaultAnnotation(NonNull.class)
+class CircuitBreaker {
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  private static final int UNAUTHORIZED = 401;
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long openDurationNanos;
+
+  // guarded by this
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean probing;
+  private boolean unauthorized;
+
+  /**
+   * @param name the name for logging, without secrets
+   * @param failureThreshold the number of consecutive failures which open the breaker, 0 to disable the breaker
+   * @param openDuration the time before a probe request is admitted
+   */
+  CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+    this.name = name;
+    this.failureThreshold = Math.max(0, failureThreshold);
+    this.openDurationNanos = openDuration.toNanos();
+  }
+
+  <T> CompletableFuture<HttpResponse<T>> execute(Supplier<CompletableFuture<HttpResponse<T>>> request) {
+    if (failureThreshold == 0) {
+      return request.get();
+    }
+    FeedbackHubException rejection = tryAcquire();
+    if (rejection != null) {
+      return CompletableFuture.failedFuture(rejection);
+    }
+    CompletableFuture<HttpResponse<T>> result;
+    try {
+      result = request.get();
+    } catch (RuntimeException e) {
+      release();
+      throw e;
+    }
+    result.whenComplete((response, throwable) -> {
+      if (response != null) {
+        onResponse(response.statusCode());
+      } else if (RetryPolicy.isTransient(throwable) || Cancellation.isDeadlineExceeded(throwable)) {
+        onFailure(false);
+      } else {
+        // e.g. a rejection by the request governor, which tells nothing
+        // about Imagga
+        release();
+      }
+    });
+    return result;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  @Nullable
+  private synchronized FeedbackHubException tryAcquire() {
+    if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+      LOG.info("Circuit breaker for {} is half open, probing", name);
+      state = State.HALF_OPEN;
+    }
+    if (state == State.CLOSED) {
+      return null;
+    }
+    if (state == State.HALF_OPEN && !probing) {
+      probing = true;
+      return null;
+    }
+    return unauthorized
+            ? new FeedbackHubException("Imagga rejected the key for " + name + " recently, failing fast", ImaggaFeedbackHubErrorCode.LOGIN_ERROR, null)
+            : new FeedbackHubException("Imagga at " + name + " is unavailable, failing fast", ImaggaFeedbackHubErrorCode.SERVICE_UNAVAILABLE, null);
+  }
+
+  private void onResponse(int statusCode) {
+    if (statusCode == UNAUTHORIZED) {
+      onFailure(true);
+    } else if (statusCode >= 500) {
+      onFailure(false);
+    } else {
+      onSuccess();
+    }
+  }
+
+  private synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOG.info("Circuit breaker for {} is closed again", name);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    probing = false;
+    unauthorized = false;
+  }
+
+  private synchronized void onFailure(boolean unauthorizedFailure) {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+      if (state == State.CLOSED) {
+        LOG.warn("Circuit breaker for {} opens after {} consecutive failures", name, consecutiveFailures);
+      }
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      unauthorized = unauthorizedFailure;
+    }
+    probing = false;
+  }
+
+  private synchronized void release() {
+    probing = false;
+  }
+}
@@ -0,0 +1,62 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Shares CircuitBreakers among adapter instances.
+ * <p>
+ * An outage of Imagga or a revoked key affects all adapters with the same
+ * URL and key.  Therefore, the registry hands out one breaker per URL, key
+ * and thresholds.
+ */
+@DefaultAnnotation(NonNull.class)
+class CircuitBreakerRegistry {
+  private final BoundedRegistry<BreakerKey, CircuitBreaker> breakers = new BoundedRegistry<>(BoundedRegistry.DEFAULT_MAX_SIZE);
+
+  CircuitBreaker getCircuitBreaker(ImaggaAdapterOptions options) {
+    BreakerKey key = new BreakerKey(options.getUrl(), options.getBasicAuthKey(),
+            options.getCircuitBreakerFailureThreshold(), options.getCircuitBreakerOpenDuration());
+    return breakers.computeIfAbsent(key, k -> new CircuitBreaker(k.url, k.failureThreshold, k.openDuration));
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private static class BreakerKey {
+    private final String url;
+    private final String basicAuthKey;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    BreakerKey(String url, String basicAuthKey, int failureThreshold, Duration openDuration) {
+      this.url = url;
+      this.basicAuthKey = basicAuthKey;
+      this.failureThreshold = failureThreshold;
+      this.openDuration = openDuration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      BreakerKey that = (BreakerKey) o;
+      return failureThreshold == that.failureThreshold &&
+              url.equals(that.url) &&
+              basicAuthKey.equals(that.basicAuthKey) &&
+              openDuration.equals(that.openDuration);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(url, basicAuthKey, failureThreshold, openDuration);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Computes content fingerprints of blobs.
+ * <p>
+ * The fingerprint is the SHA-256 digest of the blob bytes.  The blob is
+ * streamed through the digest in small chunks, so that it is never
+ * buffered on the heap as a whole.  Since this reads the complete blob, it
+ * is done by a small fixed pool rather than by the caller.
+ * <p>
+ * If the blob cannot be read, the fingerprint fails with the IOException,
+ * which is a transient failure like a failed upload.
+ */
+@DefaultAnnotation(NonNull.class)
+class ContentFingerprinter {
+  private static final String PREFIX = "sha256:";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final ExecutorService executor;
+
+  ContentFingerprinter(int parallelism) {
+    executor = ImaggaExecutors.daemonPool(parallelism, "imagga-content-fingerprinter");
+  }
+
+  CompletableFuture<String> fingerprint(Blob blob) {
+    return CompletableFuture.supplyAsync(() -> {
+      try (InputStream inputStream = blob.getInputStream()) {
+        return fingerprint(inputStream);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Stops the pool.  Pending fingerprints are still computed.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  static String fingerprint(InputStream inputStream) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int n;
+    while ((n = inputStream.read(buffer)) >= 0) {
+      digest.update(buffer, 0, n);
+    }
+    byte[] hash = digest.digest();
+    StringBuilder result = new StringBuilder(PREFIX.length() + 2 * hash.length).append(PREFIX);
+    for (byte b : hash) {
+      result.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+    return result.toString();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every JRE must support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A {@link SharedCache} in a directory, which all Studio server nodes
+ * mount, e.g. via NFS.
+ * <p>
+ * Each entry is a file, which is written to a temporary file first and
+ * then moved atomically, so that readers on other nodes never see partial
+ * entries.  The modification time of the file is set to its expiry.
+ * Expired files are deleted when they are read.  Files which are never
+ * read again remain, so the directory should be cleaned up regularly,
+ * e.g. by deleting files whose modification time has passed.
+ */
+@DefaultAnnotation(NonNull.class)
+class FileSystemSharedCache implements SharedCache {
+  private final Path directory;
+
+  FileSystemSharedCache(Path directory) {
+    this.directory = directory;
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(String key) throws IOException {
+    Path file = file(key);
+    try {
+      if (Files.getLastModifiedTime(file).toInstant().isBefore(Instant.now())) {
+        Files.deleteIfExists(file);
+        return null;
+      }
+      return Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void put(String key, byte[] value, Duration timeToLive) throws IOException {
+    Path file = file(key);
+    Files.createDirectories(file.getParent());
+    Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+    try {
+      Files.write(temp, value);
+      Files.setLastModifiedTime(temp, FileTime.from(Instant.now().plus(timeToLive)));
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  @Override
+  public void remove(String key) throws IOException {
+    Files.deleteIfExists(file(key));
+  }
+
+  @Override
+  public String toString() {
+    return FileSystemSharedCache.class.getSimpleName() + "[" + directory + "]";
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  /**
+   * Spreads the files over subdirectories, so that no directory gets too
+   * large.
+   */
+  private Path file(String key) {
+    return directory.resolve(key.substring(0, 2)).resolve(key);
+  }
+}
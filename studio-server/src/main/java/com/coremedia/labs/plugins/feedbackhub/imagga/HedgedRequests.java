@@ -0,0 +1,152 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second, hedged request if the first one takes unusually long.
+ * <p>
+ * "Unusually long" is the 95th percentile of the recent latencies.  So only
+ * about one in twenty requests is hedged, while the long tail of the
+ * latency is cut off.  Whichever request completes first wins, the other
+ * one is cancelled.  Until enough latencies are known, requests are not
+ * hedged.
+ * <p>
+ * Only idempotent requests must be hedged.
+ */
+@DefaultAnnotation(NonNull.class)
+class HedgedRequests {
+  private static final int SAMPLE_SIZE = 100;
+  private static final int MIN_SAMPLES = 20;
+  private static final double PERCENTILE = 0.95;
+
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "imagga-hedged-requests");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final long minDelayNanos;
+
+  // ring buffer of the recent latencies, guarded by this
+  private final long[] latencies = new long[SAMPLE_SIZE];
+  private int samples;
+  private int next;
+
+  /**
+   * @param minDelay the minimum delay of a hedged request, which prevents
+   *                 hedging on a very fast but noisy endpoint
+   */
+  HedgedRequests(Duration minDelay) {
+    this.minDelayNanos = minDelay.toNanos();
+  }
+
+  <T> CompletableFuture<HttpResponse<T>> send(Supplier<CompletableFuture<HttpResponse<T>>> request) {
+    CompletableFuture<HttpResponse<T>> first = timed(request);
+    Duration delay = getHedgeDelay();
+    if (delay == null) {
+      return first;
+    }
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    // The hedged request is published before it is sent, so that a failure
+    // of the first request waits for it.  Both are guarded by second, so
+    // that a failure of the first request either sees the hedged request
+    // or prevents it.
+    AtomicReference<CompletableFuture<HttpResponse<T>>> second = new AtomicReference<>();
+    ScheduledFuture<?> hedge = SCHEDULER.schedule(() -> {
+      CompletableFuture<HttpResponse<T>> pending = new CompletableFuture<>();
+      synchronized (second) {
+        if (result.isDone()) {
+          return;
+        }
+        second.set(pending);
+      }
+      pending.whenComplete((response, throwable) -> complete(result, response, throwable, first));
+      CompletableFuture<HttpResponse<T>> hedged;
+      try {
+        hedged = timed(request);
+      } catch (RuntimeException e) {
+        hedged = CompletableFuture.failedFuture(e);
+      }
+      CompletableFuture<HttpResponse<T>> sent = hedged;
+      sent.whenComplete((response, throwable) -> {
+        if (throwable != null) {
+          pending.completeExceptionally(throwable);
+        } else {
+          pending.complete(response);
+        }
+      });
+      result.whenComplete((response, throwable) -> Cancellation.cancel(sent, throwable));
+    }, delay.toNanos(), TimeUnit.NANOSECONDS);
+    first.whenComplete((response, throwable) -> {
+      hedge.cancel(false);
+      synchronized (second) {
+        complete(result, response, throwable, second.get());
+      }
+    });
+    result.whenComplete((response, throwable) -> Cancellation.cancel(first, throwable));
+    return result;
+  }
+
+  /**
+   * The delay after which a request is hedged, or null if there are not
+   * enough samples yet.
+   */
+  @Nullable
+  synchronized Duration getHedgeDelay() {
+    if (samples < MIN_SAMPLES) {
+      return null;
+    }
+    long[] sorted = Arrays.copyOf(latencies, samples);
+    Arrays.sort(sorted);
+    long percentile = sorted[Math.min(samples - 1, (int) Math.ceil(PERCENTILE * samples) - 1)];
+    return Duration.ofNanos(Math.max(minDelayNanos, percentile));
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private <T> CompletableFuture<HttpResponse<T>> timed(Supplier<CompletableFuture<HttpResponse<T>>> request) {
+    long start = System.nanoTime();
+    CompletableFuture<HttpResponse<T>> future = request.get();
+    future.whenComplete((response, throwable) -> {
+      if (throwable == null) {
+        record(System.nanoTime() - start);
+      }
+    });
+    return future;
+  }
+
+  private synchronized void record(long latency) {
+    latencies[next] = latency;
+    next = (next + 1) % SAMPLE_SIZE;
+    samples = Math.min(samples + 1, SAMPLE_SIZE);
+  }
+
+  /**
+   * Completes the result with the first successful response.  A failure
+   * only counts if the other request, if any, is not pending anymore.
+   */
+  private static <T> void complete(CompletableFuture<HttpResponse<T>> result, @Nullable HttpResponse<T> response,
+                                   @Nullable Throwable throwable, @Nullable CompletableFuture<HttpResponse<T>> other) {
+    if (throwable == null) {
+      if (!result.complete(response)) {
+        ImaggaResponseParser.discard(response);
+      }
+    } else if (other == null || other.isDone()) {
+      result.completeExceptionally(throwable);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Shares HttpClients among adapter instances.
+ * <p>
+ * An HttpClient owns a connection pool and a selector thread.  Creating one
+ * per adapter would waste both, and would cost a new TLS handshake for each
+ * adapter.  Therefore, the registry hands out one client per URL and client
+ * relevant options.
+ */
+@DefaultAnnotation(NonNull.class)
+class HttpClientRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+  private final BoundedRegistry<ClientKey, HttpClient> clients = new BoundedRegistry<>(BoundedRegistry.DEFAULT_MAX_SIZE);
+  @Nullable
+  private final Executor executor;
+
+  HttpClientRegistry() {
+    this(null);
+  }
+
+  /**
+   * @param executor the executor of the clients, or null for the
+   *                 HttpClient's default executor
+   */
+  HttpClientRegistry(@Nullable Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the shared client for the given options.
+   * <p>
+   * If the client is created by this call and the options ask for it,
+   * a connection to the URL is established in the background, so that the
+   * first editor request does not pay for the handshake.
+   */
+  HttpClient getClient(ImaggaAdapterOptions options) {
+    ClientKey key = new ClientKey(options.getUrl(), options.getConnectTimeout(), options.isPreferHttp2());
+    boolean[] created = {false};
+    HttpClient client = clients.computeIfAbsent(key, k -> {
+      created[0] = true;
+      return createClient(k);
+    });
+    if (created[0] && options.isWarmUpConnection()) {
+      warmUp(client, options.getUrl());
+    }
+    return client;
+  }
+
+  private HttpClient createClient(ClientKey key) {
+    LOG.debug("Creating HttpClient for {}", key.url);
+    HttpClient.Builder builder = HttpClient.newBuilder()
+            .connectTimeout(key.connectTimeout)
+            .version(key.preferHttp2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    return builder.build();
+  }
+
+  private static void warmUp(HttpClient client, String url) {
+    try {
+      HttpRequest request = HttpRequest.newBuilder()
+              .uri(URI.create(url))
+              .method("HEAD", HttpRequest.BodyPublishers.noBody())
+              .build();
+      client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+              .whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                  LOG.debug("Connection warm-up for {} failed: {}", url, throwable.getMessage());
+                }
+              });
+    } catch (IllegalArgumentException e) {
+      LOG.debug("Cannot warm up connection for invalid URL {}", url);
+    }
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private static class ClientKey {
+    private final String url;
+    private final Duration connectTimeout;
+    private final boolean preferHttp2;
+
+    ClientKey(String url, Duration connectTimeout, boolean preferHttp2) {
+      this.url = url;
+      this.connectTimeout = connectTimeout;
+      this.preferHttp2 = preferHttp2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ClientKey that = (ClientKey) o;
+      return preferHttp2 == that.preferHttp2 &&
+              url.equals(that.url) &&
+              connectTimeout.equals(that.connectTimeout);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(url, connectTimeout, preferHttp2);
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Further Imagga analyses of a picture, beyond keywords.
+ * <p>
+ * The picture is uploaded once, and the configured analyses are requested
+ * in parallel with the same upload ID, so that several analyses take about
+ * as long as a single one.  Each analysis is cached on its own.
+ * <p>
+ * The Imagga adapters implement this interface in addition to
+ * {@link com.coremedia.feedbackhub.adapter.keywords.BlobKeywordsFeedbackHubAdapter}.
+ */
+@DefaultAnnotation(NonNull.class)
+public interface ImageAnalysis {
+  /**
+   * Analyzes the picture with the configured analyses.
+   *
+   * @param blob the picture
+   * @param locale the locale of tags and categories, or null for English
+   * @return the merged results, which are empty for analyses that are not configured
+   */
+  CompletionStage<Result> analyze(Blob blob, @Nullable Locale locale);
+
+  /**
+   * The available analyses, by Imagga endpoint.
+   */
+  enum Analysis {
+    /**
+     * Keywords, like {@code getKeywords}
+     */
+    TAGS,
+
+    /**
+     * Categories of the configured categorizer
+     */
+    CATEGORIES,
+
+    /**
+     * The dominant colors
+     */
+    COLORS,
+
+    /**
+     * Suggestions for smart cropping
+     */
+    CROPPINGS
+  }
+
+  /**
+   * The merged results of the analyses.
+   */
+  final class Result {
+    private final List<Keyword> tags;
+    private final List<Keyword> categories;
+    private final List<Color> colors;
+    private final List<Cropping> croppings;
+
+    Result(List<Keyword> tags, List<Keyword> categories, List<Color> colors, List<Cropping> croppings) {
+      this.tags = List.copyOf(tags);
+      this.categories = List.copyOf(categories);
+      this.colors = List.copyOf(colors);
+      this.croppings = List.copyOf(croppings);
+    }
+
+    public List<Keyword> getTags() {
+      return tags;
+    }
+
+    /**
+     * The categories, with their confidence.
+     */
+    public List<Keyword> getCategories() {
+      return categories;
+    }
+
+    public List<Color> getColors() {
+      return colors;
+    }
+
+    public List<Cropping> getCroppings() {
+      return croppings;
+    }
+
+    @Override
+    public String toString() {
+      return "Result[tags=" + tags.size() + ", categories=" + categories.size() +
+              ", colors=" + colors + ", croppings=" + croppings + "]";
+    }
+  }
+
+  /**
+   * A color of the picture.
+   */
+  final class Color {
+    private final String htmlCode;
+    private final double percent;
+
+    Color(String htmlCode, double percent) {
+      this.htmlCode = htmlCode;
+      this.percent = percent;
+    }
+
+    /**
+     * The color, like #1a2b3c.
+     */
+    public String getHtmlCode() {
+      return htmlCode;
+    }
+
+    /**
+     * The share of the picture in this color.
+     */
+    public double getPercent() {
+      return percent;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Color that = (Color) o;
+      return Double.compare(that.percent, percent) == 0 &&
+              htmlCode.equals(that.htmlCode);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(htmlCode, percent);
+    }
+
+    @Override
+    public String toString() {
+      return htmlCode + " " + percent + "%";
+    }
+  }
+
+  /**
+   * A suggested crop area of the picture, in pixels.
+   */
+  final class Cropping {
+    private final int x1;
+    private final int y1;
+    private final int x2;
+    private final int y2;
+
+    Cropping(int x1, int y1, int x2, int y2) {
+      this.x1 = x1;
+      this.y1 = y1;
+      this.x2 = x2;
+      this.y2 = y2;
+    }
+
+    public int getX1() {
+      return x1;
+    }
+
+    public int getY1() {
+      return y1;
+    }
+
+    public int getX2() {
+      return x2;
+    }
+
+    public int getY2() {
+      return y2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Cropping that = (Cropping) o;
+      return x1 == that.x1 && y1 == that.y1 && x2 == that.x2 && y2 == that.y2;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(x1, y1, x2, y2);
+    }
+
+    @Override
+    public String toString() {
+      return "(" + x1 + ", " + y1 + ")-(" + x2 + ", " + y2 + ")";
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Downscales images before they are uploaded to Imagga.
+ * <p>
+ * Imagga's tagging quality does not improve with the resolution of
+ * camera images, but the upload time does.  The preprocessor detects the
+ * format from the magic bytes of the blob, decodes the image, scales it
+ * down to a maximum edge length and encodes it as JPEG.
+ * <p>
+ * Memory and CPU usage are bounded: The image is decoded with source
+ * subsampling, so that the decoded raster is at most twice the maximum edge
+ * in each dimension, no matter how large the original is.  The work is done
+ * by a small fixed pool, so that concurrent uploads cannot occupy all
+ * processors.
+ * <p>
+ * Preprocessing is an optimization.  If a JPEG or PNG image cannot be
+ * decoded, e.g. a CMYK JPEG or an image with a broken ICC profile, the
+ * original is uploaded, like without preprocessing.
+ */
+@DefaultAnnotation(NonNull.class)
+class ImagePreprocessor {
+  private static final Logger LOG = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+  private static final int HEADER_LENGTH = 12;
+  private static final float JPEG_QUALITY = 0.85f;
+  // Reject images whose header claims absurd dimensions before decoding.
+  private static final long MAX_SOURCE_PIXELS = 200_000_000L;
+
+  private final ExecutorService executor;
+
+  ImagePreprocessor(int parallelism) {
+    executor = ImaggaExecutors.daemonPool(parallelism, "imagga-image-preprocessor");
+  }
+
+  /**
+   * Returns the downscaled JPEG of the blob, or
+   * {@linkplain PreparedImage#isOriginal() the original} if a JPEG or PNG
+   * image cannot be decoded.
+   */
+  CompletableFuture<PreparedImage> prepare(Blob blob, int maxEdge) {
+    return CompletableFuture.supplyAsync(() -> prepareSync(blob, maxEdge), executor);
+  }
+
+  /**
+   * Stops the pool.  Pending images are still prepared.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  PreparedImage prepareSync(Blob blob, int maxEdge) {
+    ImageFormat format = ImageFormat.UNKNOWN;
+    try (InputStream inputStream = blob.getInputStream();
+         ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+      if (imageInputStream == null) {
+        throw new IOException("No ImageInputStream available");
+      }
+      format = detectFormat(imageInputStream);
+      ImageReader reader = findReader(imageInputStream, format);
+      try {
+        reader.setInput(imageInputStream, true, true);
+        BufferedImage image = read(reader, maxEdge);
+        return new PreparedImage(encodeJpeg(scale(image, maxEdge)), format);
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException | RuntimeException e) {
+      if (e instanceof FeedbackHubException) {
+        throw (FeedbackHubException) e;
+      }
+      if (format == ImageFormat.JPEG || format == ImageFormat.PNG) {
+        LOG.info("Cannot preprocess the {} blob with eTag '{}', uploading the original: {}", format, blob.getETag(), e.toString());
+        return PreparedImage.original(format);
+      }
+      throw new FeedbackHubException("Cannot preprocess the " + format + " blob with eTag '" + blob.getETag() + "'",
+              e, ImaggaFeedbackHubErrorCode.IMAGE_PROCESSING_FAILED, Collections.singletonList(format.name()));
+    }
+  }
+
+  private static ImageFormat detectFormat(ImageInputStream imageInputStream) throws IOException {
+    byte[] header = new byte[HEADER_LENGTH];
+    imageInputStream.mark();
+    int length = imageInputStream.read(header);
+    imageInputStream.reset();
+    return ImageFormat.of(header, Math.max(length, 0));
+  }
+
+  private static ImageReader findReader(ImageInputStream imageInputStream, ImageFormat format) {
+    if (format != ImageFormat.UNKNOWN) {
+      Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format.getImageIOName());
+      if (readers.hasNext()) {
+        return readers.next();
+      }
+    }
+    throw new FeedbackHubException("Unsupported file format " + format,
+            ImaggaFeedbackHubErrorCode.NOT_SUPPORTED_FILE_TYPE, Collections.singletonList(format.name().toLowerCase(Locale.ROOT)));
+  }
+
+  private static BufferedImage read(ImageReader reader, int maxEdge) throws IOException {
+    int width = reader.getWidth(0);
+    int height = reader.getHeight(0);
+    if ((long) width * height > MAX_SOURCE_PIXELS) {
+      throw new IOException("Image too large: " + width + "x" + height);
+    }
+    ImageReadParam param = reader.getDefaultReadParam();
+    int subsampling = Math.max(1, Math.max(width, height) / maxEdge);
+    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    return reader.read(0, param);
+  }
+
+  /**
+   * Scales the image so that its longer edge does not exceed maxEdge, and
+   * flattens it to RGB on a white background, since JPEG has no alpha.
+   */
+  private static BufferedImage scale(BufferedImage image, int maxEdge) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    double factor = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+    int targetWidth = Math.max(1, (int) Math.round(width * factor));
+    int targetHeight = Math.max(1, (int) Math.round(height * factor));
+    BufferedImage result = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = result.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setColor(Color.WHITE);
+      graphics.fillRect(0, 0, targetWidth, targetHeight);
+      graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+    } finally {
+      graphics.dispose();
+    }
+    return result;
+  }
+
+  private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(bytes)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.setOutput(outputStream);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  /**
+   * Image formats, detected by their magic bytes.
+   */
+  enum ImageFormat {
+    JPEG("jpeg"),
+    PNG("png"),
+    GIF("gif"),
+    BMP("bmp"),
+    TIFF("tiff"),
+    WEBP("webp"),
+    UNKNOWN("");
+
+    private final String imageIOName;
+
+    ImageFormat(String imageIOName) {
+      this.imageIOName = imageIOName;
+    }
+
+    String getImageIOName() {
+      return imageIOName;
+    }
+
+    static ImageFormat of(byte[] header, int length) {
+      if (startsWith(header, length, 0xFF, 0xD8, 0xFF)) {
+        return JPEG;
+      }
+      if (startsWith(header, length, 0x89, 'P', 'N', 'G')) {
+        return PNG;
+      }
+      if (startsWith(header, length, 'G', 'I', 'F', '8')) {
+        return GIF;
+      }
+      if (startsWith(header, length, 'B', 'M')) {
+        return BMP;
+      }
+      if (startsWith(header, length, 'I', 'I', 0x2A, 0x00) || startsWith(header, length, 'M', 'M', 0x00, 0x2A)) {
+        return TIFF;
+      }
+      if (startsWith(header, length, 'R', 'I', 'F', 'F') && length >= 12
+              && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+        return WEBP;
+      }
+      return UNKNOWN;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int... magic) {
+      if (length < magic.length) {
+        return false;
+      }
+      for (int i = 0; i < magic.length; i++) {
+        if ((header[i] & 0xFF) != magic[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A preprocessed image, always JPEG encoded, or the marker that the
+   * original is to be uploaded.
+   */
+  static class PreparedImage {
+    @Nullable
+    private final byte[] data;
+    private final ImageFormat sourceFormat;
+
+    PreparedImage(byte[] data, ImageFormat sourceFormat) {
+      this.data = data;
+      this.sourceFormat = sourceFormat;
+    }
+
+    private PreparedImage(ImageFormat sourceFormat) {
+      this.data = null;
+      this.sourceFormat = sourceFormat;
+    }
+
+    static PreparedImage original(ImageFormat sourceFormat) {
+      return new PreparedImage(sourceFormat);
+    }
+
+    /**
+     * Whether the image could not be preprocessed, and the original blob
+     * is to be uploaded instead.
+     */
+    boolean isOriginal() {
+      return data == null;
+    }
+
+    /**
+     * The JPEG data, not available for the {@link #isOriginal() original}.
+     */
+    byte[] getData() {
+      if (data == null) {
+        throw new IllegalStateException("The original image has no preprocessed data");
+      }
+      return data;
+    }
+
+    ImageFormat getSourceFormat() {
+      return sourceFormat;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The collaborators of an {@link ImaggaFeedbackHubAdapter}.
+ * <p>
+ * While {@link ImaggaAdapterOptions} are values of a particular settings
+ * document, the collaborators are usually shared by several adapters, see
+ * {@link ImaggaFeedbackHubAdapterFactory}.  Collaborators which are not set
+ * default to private instances without limits, which suits tests and
+ * benchmarks.  Thread pools which are not set default to shared ones.
+ */
+@DefaultAnnotation(NonNull.class)
+final class ImaggaAdapterDependencies {
+  @Nullable
+  private final Cache cache;
+  private final InFlightRequests inFlightRequests;
+  private final HttpClient client;
+  private final RequestGovernor requestGovernor;
+  private final CircuitBreaker circuitBreaker;
+  private final ImagePreprocessor imagePreprocessor;
+  @Nullable
+  private final KeywordStore keywordStore;
+  private final ContentFingerprinter contentFingerprinter;
+  private final ImaggaMetrics metrics;
+  @Nullable
+  private final SharedCacheTier sharedCache;
+  @Nullable
+  private final Executor responseExecutor;
+
+  private ImaggaAdapterDependencies(Builder builder) {
+    cache = builder.cache;
+    inFlightRequests = builder.inFlightRequests != null ? builder.inFlightRequests : new InFlightRequests();
+    client = builder.client;
+    requestGovernor = builder.requestGovernor != null ? builder.requestGovernor : new RequestGovernor(0, 0, 100);
+    circuitBreaker = builder.circuitBreaker != null ? builder.circuitBreaker : new CircuitBreaker("disabled", 0, Duration.ZERO);
+    imagePreprocessor = builder.imagePreprocessor != null ? builder.imagePreprocessor : Defaults.IMAGE_PREPROCESSOR;
+    keywordStore = builder.keywordStore;
+    contentFingerprinter = builder.contentFingerprinter != null ? builder.contentFingerprinter : Defaults.CONTENT_FINGERPRINTER;
+    metrics = builder.metrics;
+    sharedCache = builder.sharedCache;
+    responseExecutor = builder.responseExecutor;
+  }
+
+  static Builder builder(HttpClient client) {
+    return new Builder(client);
+  }
+
+  @Nullable
+  Cache getCache() {
+    return cache;
+  }
+
+  InFlightRequests getInFlightRequests() {
+    return inFlightRequests;
+  }
+
+  HttpClient getClient() {
+    return client;
+  }
+
+  RequestGovernor getRequestGovernor() {
+    return requestGovernor;
+  }
+
+  CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  ImagePreprocessor getImagePreprocessor() {
+    return imagePreprocessor;
+  }
+
+  @Nullable
+  KeywordStore getKeywordStore() {
+    return keywordStore;
+  }
+
+  ContentFingerprinter getContentFingerprinter() {
+    return contentFingerprinter;
+  }
+
+  ImaggaMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Nullable
+  SharedCacheTier getSharedCache() {
+    return sharedCache;
+  }
+
+  /**
+   * The executor which processes the responses, or null for the
+   * HttpClient's threads.
+   */
+  @Nullable
+  Executor getResponseExecutor() {
+    return responseExecutor;
+  }
+
+
+  // --- defaults ---------------------------------------------------
+
+  /**
+   * The pools of the adapters which are built without their own, shared by
+   * all of them, so that each adapter does not start further threads.
+   * Created on first use.
+   */
+  private static final class Defaults {
+    static final ImagePreprocessor IMAGE_PREPROCESSOR = new ImagePreprocessor(1);
+    static final ContentFingerprinter CONTENT_FINGERPRINTER = new ContentFingerprinter(1);
+  }
+
+
+  // --- builder ----------------------------------------------------
+
+  static final class Builder {
+    private final HttpClient client;
+    @Nullable
+    private Cache cache;
+    @Nullable
+    private InFlightRequests inFlightRequests;
+    @Nullable
+    private RequestGovernor requestGovernor;
+    @Nullable
+    private CircuitBreaker circuitBreaker;
+    @Nullable
+    private ImagePreprocessor imagePreprocessor;
+    @Nullable
+    private KeywordStore keywordStore;
+    @Nullable
+    private ContentFingerprinter contentFingerprinter;
+    private ImaggaMetrics metrics = ImaggaMetrics.NOOP;
+    @Nullable
+    private SharedCacheTier sharedCache;
+    @Nullable
+    private Executor responseExecutor;
+
+    private Builder(HttpClient client) {
+      this.client = requireNonNull(client);
+    }
+
+    Builder cache(@Nullable Cache cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    Builder inFlightRequests(InFlightRequests inFlightRequests) {
+      this.inFlightRequests = requireNonNull(inFlightRequests);
+      return this;
+    }
+
+    Builder requestGovernor(RequestGovernor requestGovernor) {
+      this.requestGovernor = requireNonNull(requestGovernor);
+      return this;
+    }
+
+    Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+      this.circuitBreaker = requireNonNull(circuitBreaker);
+      return this;
+    }
+
+    Builder imagePreprocessor(ImagePreprocessor imagePreprocessor) {
+      this.imagePreprocessor = requireNonNull(imagePreprocessor);
+      return this;
+    }
+
+    Builder keywordStore(@Nullable KeywordStore keywordStore) {
+      this.keywordStore = keywordStore;
+      return this;
+    }
+
+    Builder contentFingerprinter(ContentFingerprinter contentFingerprinter) {
+      this.contentFingerprinter = requireNonNull(contentFingerprinter);
+      return this;
+    }
+
+    Builder metrics(ImaggaMetrics metrics) {
+      this.metrics = requireNonNull(metrics);
+      return this;
+    }
+
+    Builder sharedCache(@Nullable SharedCacheTier sharedCache) {
+      this.sharedCache = sharedCache;
+      return this;
+    }
+
+    Builder responseExecutor(@Nullable Executor responseExecutor) {
+      this.responseExecutor = responseExecutor;
+      return this;
+    }
+
+    ImaggaAdapterDependencies build() {
+      return new ImaggaAdapterDependencies(this);
+    }
+  }
+}
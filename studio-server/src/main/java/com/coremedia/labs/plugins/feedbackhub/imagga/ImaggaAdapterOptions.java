@@ -0,0 +1,522 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The resolved configuration of an {@link ImaggaFeedbackHubAdapter}.
+ * <p>
+ * While {@link ImaggaFeedbackHubAdapterSettings} are nullable proxies,
+ * options are complete immutable values with defaults applied.  They are
+ * used as key for reusing adapter instances, therefore they implement
+ * equals and hashCode.
+ */
+@DefaultAnnotation(NonNull.class)
+final class ImaggaAdapterOptions {
+  private final String url;
+  private final String basicAuthKey;
+  private final int minAccuracy;
+  private final int limit;
+  private final List<String> languages;
+  private final Duration connectTimeout;
+  @Nullable
+  private final Duration requestTimeout;
+  @Nullable
+  private final Duration uploadDeadline;
+  @Nullable
+  private final Duration tagsDeadline;
+  private final boolean preferHttp2;
+  private final boolean warmUpConnection;
+  private final int maxImageEdge;
+  private final boolean contentFingerprint;
+  private final boolean directTagging;
+  private final boolean fullTagList;
+  private final int maxRequestsPerSecond;
+  private final int maxConcurrentRequests;
+  private final int maxQueuedRequests;
+  private final int maxRetries;
+  private final Duration retryBackoff;
+  private final Duration retryDeadline;
+  private final boolean hedgeTagsRequests;
+  private final int circuitBreakerFailureThreshold;
+  private final Duration circuitBreakerOpenDuration;
+  private final Duration refreshAheadWindow;
+  private final Set<ImageAnalysis.Analysis> analyses;
+  private final String categorizer;
+
+  private ImaggaAdapterOptions(Builder builder) {
+    url = builder.url;
+    basicAuthKey = builder.basicAuthKey;
+    minAccuracy = builder.minAccuracy;
+    limit = builder.limit;
+    languages = List.copyOf(builder.languages);
+    connectTimeout = builder.connectTimeout;
+    requestTimeout = builder.requestTimeout;
+    uploadDeadline = builder.uploadDeadline;
+    tagsDeadline = builder.tagsDeadline;
+    preferHttp2 = builder.preferHttp2;
+    warmUpConnection = builder.warmUpConnection;
+    maxImageEdge = builder.maxImageEdge;
+    contentFingerprint = builder.contentFingerprint;
+    directTagging = builder.directTagging;
+    fullTagList = builder.fullTagList;
+    maxRequestsPerSecond = builder.maxRequestsPerSecond;
+    maxConcurrentRequests = builder.maxConcurrentRequests;
+    maxQueuedRequests = builder.maxQueuedRequests;
+    maxRetries = builder.maxRetries;
+    retryBackoff = builder.retryBackoff;
+    retryDeadline = builder.retryDeadline;
+    hedgeTagsRequests = builder.hedgeTagsRequests;
+    circuitBreakerFailureThreshold = builder.circuitBreakerFailureThreshold;
+    circuitBreakerOpenDuration = builder.circuitBreakerOpenDuration;
+    refreshAheadWindow = builder.refreshAheadWindow;
+    analyses = Collections.unmodifiableSet(EnumSet.copyOf(builder.analyses));
+    categorizer = builder.categorizer;
+  }
+
+  static Builder builder(String url, String basicAuthKey) {
+    return new Builder(url, basicAuthKey);
+  }
+
+  String getUrl() {
+    return url;
+  }
+
+  String getBasicAuthKey() {
+    return basicAuthKey;
+  }
+
+  int getMinAccuracy() {
+    return minAccuracy;
+  }
+
+  int getLimit() {
+    return limit;
+  }
+
+  List<String> getLanguages() {
+    return languages;
+  }
+
+  Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * The timeout for a single HTTP exchange, or null for no timeout.
+   */
+  @Nullable
+  Duration getRequestTimeout() {
+    return requestTimeout;
+  }
+
+  /**
+   * The time limit of the upload phase, including retries, or null for no
+   * limit.
+   */
+  @Nullable
+  Duration getUploadDeadline() {
+    return uploadDeadline;
+  }
+
+  /**
+   * The time limit of the tags phase, including retries, or null for no
+   * limit.
+   */
+  @Nullable
+  Duration getTagsDeadline() {
+    return tagsDeadline;
+  }
+
+  boolean isPreferHttp2() {
+    return preferHttp2;
+  }
+
+  boolean isWarmUpConnection() {
+    return warmUpConnection;
+  }
+
+  /**
+   * The maximum edge length of images to upload, or 0 for uploading
+   * the original blob.
+   */
+  int getMaxImageEdge() {
+    return maxImageEdge;
+  }
+
+  /**
+   * Whether cached results are keyed by a hash of the blob content rather
+   * than by the eTag.
+   */
+  boolean isContentFingerprint() {
+    return contentFingerprint;
+  }
+
+  /**
+   * Whether pictures are posted to the tags endpoint directly, rather than
+   * uploaded first.
+   */
+  boolean isDirectTagging() {
+    return directTagging;
+  }
+
+  /**
+   * Whether the complete tag list is fetched, and minAccuracy and limit
+   * are applied locally.
+   */
+  boolean isFullTagList() {
+    return fullTagList;
+  }
+
+  /**
+   * The rate limit for requests to Imagga, 0 for unlimited.
+   */
+  int getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  /**
+   * The limit of concurrent requests to Imagga, 0 for unlimited.
+   */
+  int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  /**
+   * The number of requests that may wait for admission.
+   */
+  int getMaxQueuedRequests() {
+    return maxQueuedRequests;
+  }
+
+  /**
+   * The number of retries of a request which failed for transient reasons.
+   */
+  int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * The maximum delay before the first retry, which doubles for each
+   * further retry.
+   */
+  Duration getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  /**
+   * The time after which a request is not retried anymore.
+   */
+  Duration getRetryDeadline() {
+    return retryDeadline;
+  }
+
+  /**
+   * Whether slow tags requests are hedged by a second request.
+   */
+  boolean isHedgeTagsRequests() {
+    return hedgeTagsRequests;
+  }
+
+  /**
+   * The number of consecutive failures which open the circuit breaker,
+   * 0 if there is no circuit breaker.
+   */
+  int getCircuitBreakerFailureThreshold() {
+    return circuitBreakerFailureThreshold;
+  }
+
+  /**
+   * The time after which an open circuit breaker admits a probe request.
+   */
+  Duration getCircuitBreakerOpenDuration() {
+    return circuitBreakerOpenDuration;
+  }
+
+  /**
+   * The analyses of {@link ImageAnalysis#analyze}.
+   */
+  Set<ImageAnalysis.Analysis> getAnalyses() {
+    return analyses;
+  }
+
+  /**
+   * The Imagga categorizer of the categories analysis.
+   */
+  String getCategorizer() {
+    return categorizer;
+  }
+
+  /**
+   * The time before their expiry in which popular results are refreshed,
+   * zero if they are not refreshed.
+   */
+  Duration getRefreshAheadWindow() {
+    return refreshAheadWindow;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ImaggaAdapterOptions that = (ImaggaAdapterOptions) o;
+    return minAccuracy == that.minAccuracy &&
+            limit == that.limit &&
+            preferHttp2 == that.preferHttp2 &&
+            warmUpConnection == that.warmUpConnection &&
+            maxImageEdge == that.maxImageEdge &&
+            contentFingerprint == that.contentFingerprint &&
+            directTagging == that.directTagging &&
+            fullTagList == that.fullTagList &&
+            maxRequestsPerSecond == that.maxRequestsPerSecond &&
+            maxConcurrentRequests == that.maxConcurrentRequests &&
+            maxQueuedRequests == that.maxQueuedRequests &&
+            maxRetries == that.maxRetries &&
+            hedgeTagsRequests == that.hedgeTagsRequests &&
+            circuitBreakerFailureThreshold == that.circuitBreakerFailureThreshold &&
+            circuitBreakerOpenDuration.equals(that.circuitBreakerOpenDuration) &&
+            retryBackoff.equals(that.retryBackoff) &&
+            retryDeadline.equals(that.retryDeadline) &&
+            refreshAheadWindow.equals(that.refreshAheadWindow) &&
+            analyses.equals(that.analyses) &&
+            categorizer.equals(that.categorizer) &&
+            url.equals(that.url) &&
+            basicAuthKey.equals(that.basicAuthKey) &&
+            languages.equals(that.languages) &&
+            connectTimeout.equals(that.connectTimeout) &&
+            Objects.equals(requestTimeout, that.requestTimeout) &&
+            Objects.equals(uploadDeadline, that.uploadDeadline) &&
+            Objects.equals(tagsDeadline, that.tagsDeadline);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(url, basicAuthKey, minAccuracy, limit, languages, connectTimeout, requestTimeout, uploadDeadline, tagsDeadline, preferHttp2, warmUpConnection, maxImageEdge, contentFingerprint, directTagging, fullTagList,
+            maxRequestsPerSecond, maxConcurrentRequests, maxQueuedRequests, maxRetries, retryBackoff, retryDeadline, hedgeTagsRequests,
+            circuitBreakerFailureThreshold, circuitBreakerOpenDuration, refreshAheadWindow, analyses, categorizer);
+  }
+
+  // Do not expose the basicAuthKey.
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", ImaggaAdapterOptions.class.getSimpleName() + "[", "]")
+            .add("url=" + url)
+            .add("minAccuracy=" + minAccuracy)
+            .add("limit=" + limit)
+            .add("languages=" + languages)
+            .add("connectTimeout=" + connectTimeout)
+            .add("requestTimeout=" + requestTimeout)
+            .add("uploadDeadline=" + uploadDeadline)
+            .add("tagsDeadline=" + tagsDeadline)
+            .add("preferHttp2=" + preferHttp2)
+            .add("warmUpConnection=" + warmUpConnection)
+            .add("maxImageEdge=" + maxImageEdge)
+            .add("contentFingerprint=" + contentFingerprint)
+            .add("directTagging=" + directTagging)
+            .add("fullTagList=" + fullTagList)
+            .add("maxRequestsPerSecond=" + maxRequestsPerSecond)
+            .add("maxConcurrentRequests=" + maxConcurrentRequests)
+            .add("maxQueuedRequests=" + maxQueuedRequests)
+            .add("maxRetries=" + maxRetries)
+            .add("retryBackoff=" + retryBackoff)
+            .add("retryDeadline=" + retryDeadline)
+            .add("hedgeTagsRequests=" + hedgeTagsRequests)
+            .add("circuitBreakerFailureThreshold=" + circuitBreakerFailureThreshold)
+            .add("circuitBreakerOpenDuration=" + circuitBreakerOpenDuration)
+            .add("refreshAheadWindow=" + refreshAheadWindow)
+            .add("analyses=" + analyses)
+            .add("categorizer=" + categorizer)
+            .toString();
+  }
+
+
+  // --- builder ----------------------------------------------------
+
+  static final class Builder {
+    private final String url;
+    private final String basicAuthKey;
+    private int minAccuracy;
+    private int limit = -1;
+    private List<String> languages = Collections.emptyList();
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    @Nullable
+    private Duration requestTimeout;
+    @Nullable
+    private Duration uploadDeadline;
+    @Nullable
+    private Duration tagsDeadline;
+    private boolean preferHttp2 = true;
+    private boolean warmUpConnection;
+    private int maxImageEdge;
+    private boolean contentFingerprint;
+    private boolean directTagging;
+    private boolean fullTagList;
+    private int maxRequestsPerSecond;
+    private int maxConcurrentRequests;
+    private int maxQueuedRequests = 100;
+    private int maxRetries;
+    private Duration retryBackoff = Duration.ofMillis(200);
+    private Duration retryDeadline = Duration.ofSeconds(30);
+    private boolean hedgeTagsRequests;
+    private int circuitBreakerFailureThreshold;
+    private Duration circuitBreakerOpenDuration = Duration.ofSeconds(30);
+    private Duration refreshAheadWindow = Duration.ZERO;
+    private Set<ImageAnalysis.Analysis> analyses = EnumSet.of(ImageAnalysis.Analysis.TAGS);
+    private String categorizer = "personal_photos";
+
+    private Builder(String url, String basicAuthKey) {
+      this.url = requireNonNull(url);
+      this.basicAuthKey = requireNonNull(basicAuthKey);
+    }
+
+    Builder minAccuracy(int minAccuracy) {
+      this.minAccuracy = minAccuracy;
+      return this;
+    }
+
+    Builder limit(int limit) {
+      this.limit = limit;
+      return this;
+    }
+
+    Builder languages(List<String> languages) {
+      this.languages = requireNonNull(languages);
+      return this;
+    }
+
+    Builder connectTimeout(Duration connectTimeout) {
+      this.connectTimeout = requireNonNull(connectTimeout);
+      return this;
+    }
+
+    Builder requestTimeout(@Nullable Duration requestTimeout) {
+      this.requestTimeout = requestTimeout;
+      return this;
+    }
+
+    Builder uploadDeadline(@Nullable Duration uploadDeadline) {
+      this.uploadDeadline = uploadDeadline;
+      return this;
+    }
+
+    Builder tagsDeadline(@Nullable Duration tagsDeadline) {
+      this.tagsDeadline = tagsDeadline;
+      return this;
+    }
+
+    Builder preferHttp2(boolean preferHttp2) {
+      this.preferHttp2 = preferHttp2;
+      return this;
+    }
+
+    Builder warmUpConnection(boolean warmUpConnection) {
+      this.warmUpConnection = warmUpConnection;
+      return this;
+    }
+
+    Builder maxImageEdge(int maxImageEdge) {
+      this.maxImageEdge = maxImageEdge;
+      return this;
+    }
+
+    Builder contentFingerprint(boolean contentFingerprint) {
+      this.contentFingerprint = contentFingerprint;
+      return this;
+    }
+
+    Builder directTagging(boolean directTagging) {
+      this.directTagging = directTagging;
+      return this;
+    }
+
+    Builder fullTagList(boolean fullTagList) {
+      this.fullTagList = fullTagList;
+      return this;
+    }
+
+    Builder maxRequestsPerSecond(int maxRequestsPerSecond) {
+      this.maxRequestsPerSecond = maxRequestsPerSecond;
+      return this;
+    }
+
+    Builder maxConcurrentRequests(int maxConcurrentRequests) {
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    Builder maxQueuedRequests(int maxQueuedRequests) {
+      this.maxQueuedRequests = maxQueuedRequests;
+      return this;
+    }
+
+    Builder maxRetries(int maxRetries) {
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    Builder retryBackoff(Duration retryBackoff) {
+      this.retryBackoff = requireNonNull(retryBackoff);
+      return this;
+    }
+
+    Builder retryDeadline(Duration retryDeadline) {
+      this.retryDeadline = requireNonNull(retryDeadline);
+      return this;
+    }
+
+    Builder hedgeTagsRequests(boolean hedgeTagsRequests) {
+      this.hedgeTagsRequests = hedgeTagsRequests;
+      return this;
+    }
+
+    Builder circuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+      this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+      return this;
+    }
+
+    Builder circuitBreakerOpenDuration(Duration circuitBreakerOpenDuration) {
+      this.circuitBreakerOpenDuration = requireNonNull(circuitBreakerOpenDuration);
+      return this;
+    }
+
+    Builder refreshAheadWindow(Duration refreshAheadWindow) {
+      this.refreshAheadWindow = requireNonNull(refreshAheadWindow);
+      return this;
+    }
+
+    /**
+     * @param analyses the analyses, not empty
+     */
+    Builder analyses(Set<ImageAnalysis.Analysis> analyses) {
+      if (analyses.isEmpty()) {
+        throw new IllegalArgumentException("analyses must not be empty");
+      }
+      this.analyses = analyses;
+      return this;
+    }
+
+    Builder categorizer(String categorizer) {
+      this.categorizer = requireNonNull(categorizer);
+      return this;
+    }
+
+    ImaggaAdapterOptions build() {
+      return new ImaggaAdapterOptions(this);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Collection;
+
+/**
+ * The cache classes of the Imagga entries in the CoreMedia {@link Cache}.
+ * <p>
+ * The entries have their own cache classes, so that they do not compete
+ * with Studio's other caches.  Their weights are the estimated retained
+ * sizes in bytes, so that the capacities are memory budgets.
+ */
+@DefaultAnnotation(NonNull.class)
+final class ImaggaCacheClasses {
+  /**
+   * Upload IDs and further small entries per picture, like fingerprints
+   * and known failures.
+   */
+  static final String UPLOAD_IDS = "com.coremedia.labs.plugins.feedbackhub.imagga.UploadIds";
+
+  /**
+   * Tags and the results of further analyses.
+   */
+  static final String TAGS = "com.coremedia.labs.plugins.feedbackhub.imagga.Tags";
+
+  // object header and fields of a small object
+  private static final int OBJECT_SIZE = 32;
+  private static final int ELEMENT_SIZE = 48;
+
+  private ImaggaCacheClasses() {
+  }
+
+  /**
+   * Sets the capacities of the cache classes.
+   *
+   * @param uploadIdsCapacity the capacity of {@link #UPLOAD_IDS} in bytes
+   * @param tagsCapacity the capacity of {@link #TAGS} in bytes
+   */
+  static void configure(Cache cache, long uploadIdsCapacity, long tagsCapacity) {
+    cache.setCapacity(UPLOAD_IDS, uploadIdsCapacity);
+    cache.setCapacity(TAGS, tagsCapacity);
+  }
+
+  /**
+   * The estimated retained size of a cached value in bytes.
+   * <p>
+   * The cache key is not included, since it is small compared to tags
+   * and shares its strings with other entries.
+   */
+  static int weight(Object value) {
+    if (value instanceof KeywordList) {
+      return ((KeywordList) value).estimatedSize();
+    }
+    if (value instanceof String) {
+      return OBJECT_SIZE + 2 * ((String) value).length();
+    }
+    if (value instanceof Collection) {
+      return OBJECT_SIZE + ELEMENT_SIZE * ((Collection<?>) value).size();
+    }
+    return OBJECT_SIZE;
+  }
+}
@@ -0,0 +1,111 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the HttpClient and for the processing of Imagga responses.
+ * <p>
+ * Parsing large tags responses is CPU work.  On the HttpClient's threads,
+ * it would delay the I/O completion of other requests.  With dedicated
+ * executors, I/O and CPU work scale independently.
+ */
+@DefaultAnnotation(NonNull.class)
+final class ImaggaExecutors {
+  private static final Logger LOG = LoggerFactory.getLogger(ImaggaExecutors.class);
+
+  enum Mode {
+    /**
+     * No dedicated executor: the HttpClient uses its default executor, and
+     * responses are processed on the HttpClient's threads.
+     */
+    DEFAULT,
+
+    /**
+     * A bounded pool of platform threads.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread per task.  Requires Java 21, falls back to
+     * {@link #PLATFORM} on older runtimes.
+     */
+    VIRTUAL
+  }
+
+  private ImaggaExecutors() {
+  }
+
+  static Mode asMode(String value) {
+    try {
+      return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown executor mode '" + value + "', expected one of default, platform, virtual", e);
+    }
+  }
+
+  /**
+   * Creates an executor for the given mode.
+   *
+   * @param threads the number of threads of a platform pool
+   * @param name the prefix of the thread names
+   * @return the executor, or null for {@link Mode#DEFAULT}
+   */
+  @Nullable
+  static ExecutorService create(Mode mode, int threads, String name) {
+    switch (mode) {
+      case PLATFORM:
+        return daemonPool(threads, name);
+      case VIRTUAL:
+        ExecutorService virtual = virtual();
+        if (virtual != null) {
+          return virtual;
+        }
+        LOG.warn("Virtual threads require Java 21, using {} platform threads for {}", threads, name);
+        return daemonPool(threads, name);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Creates a fixed pool of daemon threads, whose threads terminate when
+   * they are idle for a minute.
+   *
+   * @param threads the number of threads, at least one
+   * @param name the prefix of the thread names
+   */
+  static ExecutorService daemonPool(int threads, String name) {
+    int parallelism = Math.max(1, threads);
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // The plugin is compiled for Java 11, so virtual threads are only
+  // available by reflection.
+  @Nullable
+  private static ExecutorService virtual() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
@@ -6,35 +6,41 @@ import com.coremedia.cache.PeekResult;
 import com.coremedia.cache.TimedDependency;
 import com.coremedia.feedbackhub.adapter.Blob;
 import com.coremedia.feedbackhub.adapter.FeedbackContext;
+import com.coremedia.feedbackhub.adapter.FeedbackHubErrorCode;
 import com.coremedia.feedbackhub.adapter.FeedbackHubException;
 import com.coremedia.feedbackhub.adapter.keywords.BlobKeywordsFeedbackHubAdapter;
 import com.coremedia.feedbackhub.adapter.keywords.Keyword;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -48,50 +54,150 @@ import static java.util.Objects.requireNonNull;
  * Then a second call is made with the received id, in order to get the keywords for the uploaded resource.
  * The keywords refer to a given locale. If no locale is passed to the Adapter, the keywords
  * refer to Imagga's default language, which is English ("en").
+ * <p>
+ * If additional languages are configured, the tags request fetches all of
+ * them at once, and the result is cached for each language, so that a
+ * subsequent request for another configured language is a cache hit.
+ * <p>
+ * In full tag list mode, the complete tag list is cached, and the
+ * keywords according to minAccuracy and limit are selected from it, so
+ * that different settings need no further tags requests.
+ * <p>
+ * In direct tagging mode, the picture is posted to the tags endpoint
+ * right away, which saves the upload round trip.  This is the better choice
+ * unless the upload ID is reused for several locales which are not covered
+ * by the configured languages.
+ * <p>
+ * For imports, {@link BulkKeywordsTagging} tags many pictures in the
+ * background and fills the same cache entries as interactive requests.
+ * <p>
+ * With {@link ImageAnalysis}, further analyses like categories and colors
+ * are requested in parallel with the upload ID of the tags.
+ * <p>
+ * Results of popular pictures are refreshed before they expire, see
+ * {@link RefreshAhead}.
+ * <p>
+ * Failures which would recur for a picture, like an unsupported file
+ * type or a rejection of a corrupt file, are remembered for a few minutes,
+ * so that repeated requests fail fast.
+ * <p>
+ * In a cluster, a {@link SharedCache} lets the Studio server nodes share
+ * upload IDs and keywords.  The local cache remains in front of it.
  */
-class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
+class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter, BulkKeywordsTagging, ImageAnalysis {
   private static final Logger LOG = LoggerFactory.getLogger(ImaggaFeedbackHubAdapter.class);
 
   //URL fragments
   private static final String UPLOAD_URI = "/uploads";
   private static final String TAGS_URI = "/tags";
-
-  //JSON keys
-  private static final String UPLOAD_ID_KEY = "upload_id";
-  private static final String RESULT_KEY = "result";
-  private static final String TAGS_KEY = "tags";
-  private static final String CONFIDENCE_KEY = "confidence";
-  private static final String TAG_KEY = "tag";
+  private static final String CATEGORIES_URI = "/categories/";
+  private static final String COLORS_URI = "/colors";
+  private static final String CROPPINGS_URI = "/croppings";
 
   private static final String EN_DEFAULT_LANGUAGE = "en";
-  private static final String STATUS_KEY = "status";
-  private static final String TEXT_KEY = "text";
-  private static final String BOUNDARY = "ImageUpload";
   private static final String PNG = "png";
   private static final String JPG = "jpg";
 
+  private static final Duration MIN_HEDGE_DELAY = Duration.ofMillis(200);
+  // Failures which recur for the same picture are remembered for a while,
+  // but not for long, in case Imagga changes its mind.
+  private static final long KNOWN_FAILURE_MINUTES = 10;
+  // The status of a tags request whose upload ID Imagga rejects.
+  private static final int BAD_REQUEST = 400;
+  // The statuses which describe the picture itself: a corrupt file, an
+  // oversized file, an unsupported media type and an unprocessable image.
+  private static final Set<Integer> PICTURE_REJECTED_STATUSES = Set.of(BAD_REQUEST, 413, 415, 422);
+
   private final Cache cache;
   private final String url;
   private final String basicAuthKey;
   private final int minAccuracy;
   private final int limit;
+  // The threshold and limit of tags requests, which also identify cached
+  // results.  They differ from minAccuracy and limit in full tag list mode.
+  private final int queryMinAccuracy;
+  private final int queryLimit;
+  private final boolean fullTagList;
+  private final List<String> languages;
+  @Nullable
+  private final Duration requestTimeout;
+  @Nullable
+  private final Duration uploadDeadline;
+  @Nullable
+  private final Duration tagsDeadline;
+  @Nullable
+  private final Duration directTagsDeadline;
+  private final int maxImageEdge;
+  private final InFlightRequests inFlightRequests;
+  private final RequestGovernor requestGovernor;
+  private final CircuitBreaker circuitBreaker;
+  private final RetryPolicy retryPolicy;
+  @Nullable
+  private final HedgedRequests hedgedRequests;
+  private final ImagePreprocessor imagePreprocessor;
+  @Nullable
+  private final KeywordStore keywordStore;
+  private final boolean contentFingerprint;
+  private final ContentFingerprinter contentFingerprinter;
+  private final ImaggaMetrics metrics;
+  private final boolean directTagging;
+  private final Set<Analysis> analyses;
+  private final String categorizer;
+  private final RefreshAhead refreshAhead;
+  // the languages whose tags have been cached, so that a refresh of an
+  // upload ID can refresh them all
+  private final Set<String> tagsLanguages = ConcurrentHashMap.newKeySet();
+  @Nullable
+  private final SharedCacheTier sharedCache;
+  // processes the responses, or null for the HttpClient's threads
+  @Nullable
+  private final Executor responseExecutor;
 
   private HttpClient client;
-  private final JsonParser jsonParser;
 
   ImaggaFeedbackHubAdapter(@NonNull String url,
                            @NonNull String basicAuthKey,
                            int minAccuracy,
                            int limit,
                            @Nullable Cache cache) {
-    this.url = url;
-    this.basicAuthKey = basicAuthKey;
-    this.minAccuracy = minAccuracy;
-    this.limit = limit;
-    this.cache = cache;
+    this(ImaggaAdapterOptions.builder(url, basicAuthKey).minAccuracy(minAccuracy).limit(limit).build(),
+            ImaggaAdapterDependencies.builder(HttpClient.newHttpClient()).cache(cache).build());
+  }
 
-    client = HttpClient.newHttpClient();
-    jsonParser = new JsonParser();
+  ImaggaFeedbackHubAdapter(@NonNull ImaggaAdapterOptions options, @NonNull ImaggaAdapterDependencies dependencies) {
+    Cache cache = dependencies.getCache();
+    this.url = options.getUrl();
+    this.basicAuthKey = options.getBasicAuthKey();
+    this.minAccuracy = options.getMinAccuracy();
+    this.limit = options.getLimit();
+    this.fullTagList = options.isFullTagList();
+    this.queryMinAccuracy = fullTagList ? 0 : minAccuracy;
+    this.queryLimit = fullTagList ? -1 : limit;
+    this.languages = options.getLanguages();
+    this.requestTimeout = options.getRequestTimeout();
+    this.uploadDeadline = options.getUploadDeadline();
+    this.tagsDeadline = options.getTagsDeadline();
+    // A direct tags request includes the upload of the picture.
+    this.directTagsDeadline = uploadDeadline != null && tagsDeadline != null ? uploadDeadline.plus(tagsDeadline) : null;
+    this.maxImageEdge = options.getMaxImageEdge();
+    this.cache = cache;
+    this.inFlightRequests = dependencies.getInFlightRequests();
+    this.client = dependencies.getClient();
+    this.requestGovernor = dependencies.getRequestGovernor();
+    this.circuitBreaker = dependencies.getCircuitBreaker();
+    this.retryPolicy = new RetryPolicy(options.getMaxRetries(), options.getRetryBackoff(), options.getRetryDeadline());
+    this.hedgedRequests = options.isHedgeTagsRequests() ? new HedgedRequests(MIN_HEDGE_DELAY) : null;
+    this.imagePreprocessor = dependencies.getImagePreprocessor();
+    this.keywordStore = dependencies.getKeywordStore();
+    this.contentFingerprint = options.isContentFingerprint();
+    this.contentFingerprinter = dependencies.getContentFingerprinter();
+    this.metrics = dependencies.getMetrics();
+    this.directTagging = options.isDirectTagging();
+    this.analyses = options.getAnalyses();
+    this.categorizer = options.getCategorizer();
+    this.refreshAhead = new RefreshAhead(cache != null ? options.getRefreshAheadWindow() : Duration.ZERO);
+    this.sharedCache = dependencies.getSharedCache();
+    this.responseExecutor = dependencies.getResponseExecutor();
 
     if (cache == null) {
       LOG.info("No cache in {}.  This works functionally, but is too slow for production use.", getClass().getName());
@@ -105,7 +211,59 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
   @NonNull
   public CompletionStage<List<Keyword>> getKeywords(FeedbackContext context, Blob blob, @Nullable Locale locale) {
     try {
-      return upload(blob).thenCompose(uploadId -> tags(uploadId, locale, blob));
+      // Cancellation of the result propagates to the running requests,
+      // unless other callers wait for them as well.
+      return Cancellation.thenApply(Cancellation.thenCompose(contentId(blob), contentId -> getKeywords(blob, contentId, locale)), this::select);
+    } catch (FeedbackHubException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+
+  // --- BulkKeywordsTagging ----------------------------------------
+
+  @Override
+  @NonNull
+  public CompletionStage<BulkKeywordsTagging.Result> tagAll(Stream<Blob> blobs, List<Locale> locales, int parallelism, Listener listener) {
+    List<Locale> effectiveLocales = locales.isEmpty() ? Collections.singletonList(null) : List.copyOf(locales);
+    return new BulkTagger(blobs.iterator(), blob -> tag(blob, effectiveLocales), listener).run(parallelism);
+  }
+
+  /**
+   * Tags the blob for all the locales, one after the other, so that the
+   * upload ID of the first locale is reused.
+   */
+  private CompletionStage<?> tag(Blob blob, List<Locale> locales) {
+    return contentId(blob).thenCompose(contentId -> {
+      CompletionStage<?> result = CompletableFuture.completedFuture(null);
+      for (Locale locale : locales) {
+        result = result.thenCompose(ignored -> getKeywords(blob, contentId, locale));
+      }
+      return result;
+    });
+  }
+
+
+  // --- ImageAnalysis ----------------------------------------------
+
+  @Override
+  @NonNull
+  public CompletionStage<ImageAnalysis.Result> analyze(Blob blob, @Nullable Locale locale) {
+    try {
+      return Cancellation.thenCompose(contentId(blob), contentId -> {
+        FeedbackHubException knownFailure = findKnownFailure(contentId);
+        if (knownFailure != null) {
+          return CompletableFuture.failedFuture(knownFailure);
+        }
+        return Cancellation.handleCompose(uploadAndAnalyze(blob, contentId, locale), (result, throwable) -> {
+          if (throwable != null && isUploadIdRejected(throwable)) {
+            // Like for keywords, start over once with a new upload.
+            LOG.debug("Imagga rejected the upload ID of the blob with eTag '{}', uploading again", blob.getETag());
+            return uploadAndAnalyze(blob, contentId, locale);
+          }
+          return throwable != null ? CompletableFuture.<ImageAnalysis.Result>failedFuture(throwable) : CompletableFuture.completedFuture(result);
+        });
+      });
     } catch (FeedbackHubException e) {
       return CompletableFuture.failedFuture(e);
     }
@@ -116,65 +274,403 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
     return new StringJoiner(", ", ImaggaFeedbackHubAdapter.class.getSimpleName() + "[", "]")
             .add("minAccuracy=" + minAccuracy)
             .add("limit=" + limit)
+            .add("languages=" + languages)
             .toString();
   }
 
 
   // --- internal ---------------------------------------------------
 
-  private CompletionStage<String> upload(Blob blob) {
-    CompletionStage<String> result = peekAsFuture(new UploadIdCacheKey(blob, url, basicAuthKey));
-    return result != null ? result : uploadUncached(blob);
+  /**
+   * The keywords according to minAccuracy and limit.
+   * <p>
+   * Imagga applies them already, unless in full tag list mode, where the
+   * cached lists are complete.
+   */
+  private List<Keyword> select(KeywordList keywords) {
+    return (fullTagList ? keywords.head(limit, minAccuracy) : keywords).toKeywords();
+  }
+
+  private CompletionStage<KeywordList> getKeywords(Blob blob, String contentId, @Nullable Locale locale) {
+    FeedbackHubException knownFailure = findKnownFailure(contentId);
+    if (knownFailure != null) {
+      return CompletableFuture.failedFuture(knownFailure);
+    }
+    KeywordList stored = findStoredKeywords(contentId, getLanguage(locale));
+    if (stored != null) {
+      return CompletableFuture.completedFuture(stored);
+    }
+    if (directTagging) {
+      return directTags(blob, contentId, locale);
+    }
+    return Cancellation.handleCompose(uploadAndTags(blob, contentId, locale), (keywords, throwable) -> {
+      if (throwable != null && isUploadIdRejected(throwable)) {
+        // The upload ID has been invalidated, so this is a new upload.
+        LOG.debug("Imagga rejected the upload ID of the blob with eTag '{}', uploading again", blob.getETag());
+        return uploadAndTags(blob, contentId, locale);
+      }
+      return throwable != null ? CompletableFuture.<KeywordList>failedFuture(throwable) : CompletableFuture.completedFuture(keywords);
+    });
+  }
+
+  private CompletionStage<KeywordList> uploadAndTags(Blob blob, String contentId, @Nullable Locale locale) {
+    return Cancellation.thenCompose(upload(blob, contentId, locale), uploadId -> tags(uploadId, locale, blob, contentId));
+  }
+
+  private CompletionStage<ImageAnalysis.Result> uploadAndAnalyze(Blob blob, String contentId, @Nullable Locale locale) {
+    return Cancellation.thenCompose(upload(blob, contentId, locale), uploadId -> analyze(uploadId, locale, blob, contentId));
+  }
+
+  /**
+   * Requests the configured analyses in parallel and merges their results.
+   * <p>
+   * The further analyses are paid requests, so they are only made when
+   * they are asked for, never along with plain keyword requests.
+   */
+  private CompletionStage<ImageAnalysis.Result> analyze(String uploadId, @Nullable Locale locale, Blob blob, String contentId) {
+    String language = getLanguage(locale);
+    // Start all requests before waiting for any of them.
+    CompletableFuture<KeywordList> tags = analysis(Analysis.TAGS, () -> tags(uploadId, locale, blob, contentId), KeywordList.EMPTY);
+    CompletableFuture<KeywordList> categories = analysis(Analysis.CATEGORIES, () -> analysisRequest(
+            new AnalysisCacheKey<>(Analysis.CATEGORIES, uploadId, categorizer + "|" + language), contentId, ImaggaMetrics.CATEGORIES,
+            CATEGORIES_URI + categorizer + concatUrlParameters("image_upload_id=" + uploadId, "language=" + language),
+            body -> ImaggaResponseParser.parseCategories(body, List.of(language)).get(language)), KeywordList.EMPTY);
+    CompletableFuture<List<Color>> colors = analysis(Analysis.COLORS, () -> analysisRequest(
+            new AnalysisCacheKey<>(Analysis.COLORS, uploadId, ""), contentId, ImaggaMetrics.COLORS,
+            COLORS_URI + concatUrlParameters("image_upload_id=" + uploadId),
+            ImaggaResponseParser::parseColors), List.of());
+    CompletableFuture<List<Cropping>> croppings = analysis(Analysis.CROPPINGS, () -> analysisRequest(
+            new AnalysisCacheKey<>(Analysis.CROPPINGS, uploadId, ""), contentId, ImaggaMetrics.CROPPINGS,
+            CROPPINGS_URI + concatUrlParameters("image_upload_id=" + uploadId),
+            ImaggaResponseParser::parseCroppings), List.of());
+    CompletableFuture<ImageAnalysis.Result> result = CompletableFuture.allOf(tags, categories, colors, croppings)
+            .thenApply(ignored -> new ImageAnalysis.Result(select(tags.join()), categories.join().toKeywords(), colors.join(), croppings.join()));
+    for (CompletableFuture<?> part : List.of(tags, categories, colors, croppings)) {
+      Cancellation.propagate(result, part);
+    }
+    return result;
+  }
+
+  private <T> CompletableFuture<T> analysis(Analysis analysis, Supplier<CompletionStage<T>> request, T none) {
+    return analyses.contains(analysis) ? request.get().toCompletableFuture() : CompletableFuture.completedFuture(none);
+  }
+
+  private <T> CompletionStage<T> analysisRequest(AnalysisCacheKey<T> cacheKey, String contentId, String phase, String uri, AnalysisParser<T> parser) {
+    CompletionStage<T> result = peekAsFuture(cacheKey);
+    if (result != null) {
+      return result;
+    }
+    return inFlightRequests.join(cacheKey, () -> {
+      HttpRequest request = newRequestBuilder()
+              .uri(URI.create(url + uri))
+              .header("Authorization", "Basic " + basicAuthKey)
+              .GET()
+              .build();
+      // Like tags requests, analysis requests are bounded by the tags deadline.
+      return Cancellation.withDeadline(Cancellation.thenApply(sendIdempotent(phase, request),
+                      httpResponse -> extractAnalysis(httpResponse, cacheKey, contentId, phase, parser), responseExecutor), tagsDeadline,
+              () -> timeout("The " + phase + " request with uploadId '" + cacheKey.uploadId + "'", tagsDeadline));
+    });
+  }
+
+  private <T> T extractAnalysis(HttpResponse<InputStream> response, AnalysisCacheKey<T> cacheKey, String contentId, String phase, AnalysisParser<T> parser) {
+    if (response.statusCode() != 200) {
+      if (response.statusCode() == BAD_REQUEST) {
+        invalidateUploadId(contentId);
+      }
+      throw requestFailed(response, phase + " with uploadId '" + cacheKey.uploadId + "'");
+    }
+    long start = metrics.parseStarted();
+    T value;
+    try (Reader body = ImaggaResponseParser.asReader(metrics.countResponseBytes(phase,
+            ImaggaResponseParser.openBody(response, ImaggaResponseParser.MAX_RESPONSE_BYTES)))) {
+      value = parser.parse(body);
+      metrics.parseFinished(phase, start);
+    } catch (Exception e) {
+      throw new FeedbackHubException("There was an exception while processing the " + phase + " response", e, ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+    }
+    // Like the tags, a little longer than the uploadId.
+    return cached(cacheKey, value, 23 * 60 + 1L, TimeUnit.MINUTES, null);
+  }
+
+  @Nullable
+  private FeedbackHubException findKnownFailure(String contentId) {
+    CompletableFuture<KnownFailure> knownFailure = peekAsFuture(new KnownFailureCacheKey(contentId, url, basicAuthKey, maxImageEdge));
+    return knownFailure != null ? knownFailure.join().toException() : null;
+  }
+
+  /**
+   * Whether Imagga rejected the upload ID of a tags request.
+   * <p>
+   * Other failures, like server errors or rate limits after all retries,
+   * would not be fixed by uploading the picture again, but would double
+   * the load on Imagga.
+   */
+  private static boolean isUploadIdRejected(Throwable throwable) {
+    FeedbackHubException cause = asFeedbackHubException(throwable);
+    return cause instanceof RequestFailedException && ((RequestFailedException) cause).getStatusCode() == BAD_REQUEST;
+  }
+
+  @Nullable
+  private static FeedbackHubException asFeedbackHubException(Throwable throwable) {
+    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    return cause instanceof FeedbackHubException ? (FeedbackHubException) cause : null;
+  }
+
+  /**
+   * Whether Imagga rejected a picture for reasons of the picture itself,
+   * like a corrupt or oversized file, so that it would reject it again.
+   * <p>
+   * Other client errors, like rejected keys, an exceeded quota (403), a
+   * wrong URL (404) or rate limits, are about the account or the
+   * configuration, and would fail for any picture.
+   */
+  private static boolean isPictureRejected(int statusCode) {
+    return PICTURE_REJECTED_STATUSES.contains(statusCode);
+  }
+
+  /**
+   * Remembers a failure which would recur for the picture, so that repeated
+   * requests fail without reading or uploading the picture again.
+   *
+   * @return the failure, for convenient throwing
+   */
+  private FeedbackHubException knownFailure(String contentId, FeedbackHubException failure) {
+    cached(new KnownFailureCacheKey(contentId, url, basicAuthKey, maxImageEdge), new KnownFailure(failure), KNOWN_FAILURE_MINUTES, TimeUnit.MINUTES, null);
+    return failure;
+  }
+
+  /**
+   * The identity of the blob's content, which the cache keys are based on.
+   * <p>
+   * By default, this is the eTag of the blob.  In content fingerprint mode,
+   * it is a hash of the blob bytes, so that copies of an image with different
+   * eTags share their Imagga results.  The fingerprint is cached by the eTag,
+   * so that the blob is hashed only once.
+   */
+  private CompletionStage<String> contentId(Blob blob) {
+    String eTag = requireNonNull(blob.getETag(), "blob must have an etag");
+    if (!contentFingerprint) {
+      return CompletableFuture.completedFuture(eTag);
+    }
+    FingerprintCacheKey cacheKey = new FingerprintCacheKey(eTag);
+    CompletionStage<String> result = peekAsFuture(cacheKey);
+    return result != null ? result : inFlightRequests.join(cacheKey, () -> contentFingerprinter.fingerprint(blob)
+            .thenApply(fingerprint -> cached(cacheKey, fingerprint, 24, TimeUnit.HOURS, null)));
+  }
+
+  /**
+   * Looks up the keywords in the persistent keyword store, unless they are
+   * available from the cache anyway.
+   * <p>
+   * The cache is checked without recording the lookups, which the
+   * subsequent upload and tags lookups record.
+   */
+  @Nullable
+  private KeywordList findStoredKeywords(String contentId, String language) {
+    if (keywordStore == null) {
+      return null;
+    }
+    if (cache != null) {
+      if (directTagging && cache.peek(new ContentTagsCacheKey(contentId, url, basicAuthKey, language, queryLimit, queryMinAccuracy)).isPresent()) {
+        return null;
+      }
+      PeekResult<String> uploadId = cache.peek(new UploadIdCacheKey(contentId, url, basicAuthKey));
+      if (uploadId.isPresent() && cache.peek(new TagsCacheKey(uploadId.get(), language, queryLimit, queryMinAccuracy)).isPresent()) {
+        return null;
+      }
+    }
+    return keywordStore.find(storeKey(contentId, language));
+  }
+
+  private KeywordStore.Key storeKey(String contentId, String language) {
+    return new KeywordStore.Key(contentId, url, language, queryLimit, queryMinAccuracy);
+  }
+
+  private CompletionStage<String> upload(Blob blob, String contentId, @Nullable Locale locale) {
+    UploadIdCacheKey cacheKey = new UploadIdCacheKey(contentId, url, basicAuthKey);
+    CompletionStage<String> result = peekAsFuture(cacheKey);
+    if (result != null) {
+      String oldUploadId = result.toCompletableFuture().join();
+      refreshAhead.hit(cacheKey, () -> refreshUpload(cacheKey, oldUploadId, blob, contentId, locale));
+      return result;
+    }
+    return inFlightRequests.join(cacheKey, () -> sharedUploadId(cacheKey, () -> uploadWithDeadline(blob, contentId)));
   }
 
-  private CompletionStage<String> uploadUncached(Blob blob) {
-    HttpRequest request = HttpRequest.newBuilder()
+  /**
+   * Uploads the picture again, ahead of the expiry of the old upload ID.
+   * <p>
+   * A new upload ID invalidates the tags of the old one, so the tags of all
+   * the languages which are cached for the old one are refreshed, too.  A
+   * foreground request which misses meanwhile joins the refresh.
+   */
+  private CompletionStage<KeywordList> refreshUpload(UploadIdCacheKey cacheKey, String oldUploadId, Blob blob, String contentId, @Nullable Locale locale) {
+    List<String> requestedLanguages = getCachedLanguages(oldUploadId, locale);
+    return Cancellation.thenCompose(inFlightRequests.join(cacheKey, () -> uploadWithDeadline(blob, contentId)),
+            uploadId -> inFlightRequests.join(new TagsCacheKey(uploadId, getLanguage(locale), queryLimit, queryMinAccuracy),
+                    () -> tagsWithDeadline(uploadId, locale, requestedLanguages, contentId)));
+  }
+
+  private CompletionStage<String> uploadWithDeadline(Blob blob, String contentId) {
+    return Cancellation.withDeadline(uploadUncached(blob, contentId), uploadDeadline,
+            () -> timeout("The upload of the blob with eTag '" + blob.getETag() + "'", uploadDeadline));
+  }
+
+  private CompletionStage<String> uploadUncached(Blob blob, String contentId) {
+    return Cancellation.thenCompose(getBodyPublisher(blob, contentId), body -> uploadUncached(blob, contentId, body));
+  }
+
+  private CompletionStage<String> uploadUncached(Blob blob, String contentId, MultipartBodyPublisher body) {
+    HttpRequest request = newRequestBuilder()
             .uri(URI.create(url + UPLOAD_URI))
             .header("Authorization", "Basic " + basicAuthKey)
-            .header("Content-Type", "multipart/form-data;boundary=" + BOUNDARY)
-            .POST(HttpRequest.BodyPublishers.ofInputStream(getInputStreamSupplierForBlob(blob)))
+            .header("Content-Type", MultipartBodyPublisher.getContentType())
+            .POST(body)
             .build();
-    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-            .thenApply(httpResponse -> extractUploadId(httpResponse, blob));
+    return Cancellation.thenApply(abortOnCancel(send(ImaggaMetrics.UPLOAD, request), body),
+            httpResponse -> extractUploadId(httpResponse, blob, contentId), responseExecutor);
   }
 
-  private String extractUploadId(HttpResponse<String> uploadResponse, Blob blob) {
+  private String extractUploadId(HttpResponse<InputStream> uploadResponse, Blob blob, String contentId) {
     if (uploadResponse.statusCode() == 200) {
       // Imagga upload IDs are valid for 24h. Cache them slightly shorter
       // in order to prevent follow-up round trips with outdated IDs.
-      UploadIdCacheKey cacheKey = new UploadIdCacheKey(blob, url, basicAuthKey);
-      return cached(cacheKey, getUploadIdFromResponse(uploadResponse), 23, TimeUnit.HOURS, cacheKey.asDependency());
+      UploadIdCacheKey cacheKey = new UploadIdCacheKey(contentId, url, basicAuthKey);
+      String uploadId = cached(cacheKey, getUploadIdFromResponse(uploadResponse, contentId), 23, TimeUnit.HOURS, cacheKey.asDependency());
+      refreshAhead.cached(cacheKey, Duration.ofHours(23));
+      if (sharedCache != null) {
+        sharedCache.putString(cacheKey.sharedKey(), uploadId, Duration.ofHours(23));
+      }
+      return uploadId;
     } else {
+      String body = ImaggaResponseParser.readErrorBody(uploadResponse);
       ImaggaFeedbackHubErrorCode errorCode;
       List<String> arguments = null;
       if(uploadResponse.statusCode() == 401){
         errorCode = ImaggaFeedbackHubErrorCode.LOGIN_ERROR;
       } else {
-        arguments = Collections.singletonList(getErrorMessageFromResponse(uploadResponse));
+        arguments = Collections.singletonList(getErrorMessageFromResponse(body));
         errorCode = ImaggaFeedbackHubErrorCode.UPLOAD_FAILED;
       }
-      throw new FeedbackHubException("The upload of the blob with eTag '" + blob.getETag() + "' " +
-              "failed with status Code '" + uploadResponse.statusCode() + "' and message:'" + uploadResponse.body() + "'", errorCode, arguments);
+      FeedbackHubException failure = new FeedbackHubException("The upload of the blob with eTag '" + blob.getETag() + "' " +
+              "failed with status Code '" + uploadResponse.statusCode() + "' and message:'" + body + "'", errorCode, arguments);
+      throw isPictureRejected(uploadResponse.statusCode()) ? knownFailure(contentId, failure) : failure;
     }
   }
 
-  private CompletionStage<List<Keyword>> tags(String uploadId, @Nullable Locale locale, Blob blob) {
-    CompletionStage<List<Keyword>> result = peekAsFuture(new TagsCacheKey(uploadId, locale, limit, minAccuracy));
-    return result != null ? result : tagsUncached(uploadId, locale, blob);
+  private CompletionStage<KeywordList> tags(String uploadId, @Nullable Locale locale, Blob blob, String contentId) {
+    TagsCacheKey cacheKey = new TagsCacheKey(uploadId, getLanguage(locale), queryLimit, queryMinAccuracy);
+    CompletionStage<KeywordList> result = peekAsFuture(cacheKey);
+    return result != null ? result : inFlightRequests.join(cacheKey, () -> sharedKeywords(cacheKey, cacheKey.sharedKey(),
+            () -> tagsWithDeadline(uploadId, locale, getRequestedLanguages(locale), contentId)));
+  }
+
+  private CompletionStage<KeywordList> tagsWithDeadline(String uploadId, @Nullable Locale locale, List<String> requestedLanguages, String contentId) {
+    return Cancellation.withDeadline(tagsUncached(uploadId, locale, requestedLanguages, contentId), tagsDeadline,
+            () -> timeout("The tags request with uploadId '" + uploadId + "'", tagsDeadline));
   }
 
-  private CompletableFuture<List<Keyword>> tagsUncached(String uploadId, @Nullable Locale locale, Blob blob) {
+  /**
+   * @param requestedLanguages the language of the locale first, followed by further languages to cache
+   */
+  private CompletableFuture<KeywordList> tagsUncached(String uploadId, @Nullable Locale locale, List<String> requestedLanguages, String contentId) {
     String idP = "image_upload_id=" + uploadId;
-    String languageP = locale != null ? "language=" + locale.getLanguage() : null;
-    String limitP = "limit=" + limit;
-    String thresholdP = "threshold=" + minAccuracy + ".0";
-    HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create(url + TAGS_URI + concatUrlParameters(idP, languageP, limitP, thresholdP)))
+    HttpRequest request = newRequestBuilder()
+            .uri(URI.create(url + TAGS_URI + concatUrlParameters(idP, getLanguageParameter(locale, requestedLanguages), getLimitParameter(), getThresholdParameter())))
             .header("Authorization", "Basic " + basicAuthKey)
             .GET()
             .build();
-    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-            .thenApply(httpResponse -> extractKeywords(httpResponse, uploadId, locale, blob));
+    return Cancellation.thenApply(sendIdempotent(ImaggaMetrics.TAGS, request),
+            httpResponse -> extractKeywords(httpResponse, uploadId, locale, requestedLanguages, contentId), responseExecutor);
+  }
+
+  private CompletionStage<KeywordList> directTags(Blob blob, String contentId, @Nullable Locale locale) {
+    ContentTagsCacheKey cacheKey = new ContentTagsCacheKey(contentId, url, basicAuthKey, getLanguage(locale), queryLimit, queryMinAccuracy);
+    CompletionStage<KeywordList> result = peekAsFuture(cacheKey);
+    if (result != null) {
+      // A foreground request which misses meanwhile joins the refresh.
+      refreshAhead.hit(cacheKey, () -> inFlightRequests.join(cacheKey, () -> directTagsWithDeadline(blob, contentId, locale)));
+      return result;
+    }
+    return inFlightRequests.join(cacheKey, () -> sharedKeywords(cacheKey, cacheKey.sharedKey(), () -> directTagsWithDeadline(blob, contentId, locale)));
+  }
+
+  private CompletionStage<KeywordList> directTagsWithDeadline(Blob blob, String contentId, @Nullable Locale locale) {
+    return Cancellation.withDeadline(
+            Cancellation.thenCompose(getBodyPublisher(blob, contentId), body -> directTagsUncached(body, locale, blob, contentId)), directTagsDeadline,
+            () -> timeout("The tags request for the blob with eTag '" + blob.getETag() + "'", directTagsDeadline));
+  }
+
+  private CompletableFuture<KeywordList> directTagsUncached(MultipartBodyPublisher body, @Nullable Locale locale, Blob blob, String contentId) {
+    List<String> requestedLanguages = getRequestedLanguages(locale);
+    HttpRequest request = newRequestBuilder()
+            .uri(URI.create(url + TAGS_URI + concatUrlParameters(getLanguageParameter(locale, requestedLanguages), getLimitParameter(), getThresholdParameter())))
+            .header("Authorization", "Basic " + basicAuthKey)
+            .header("Content-Type", MultipartBodyPublisher.getContentType())
+            .POST(body)
+            .build();
+    return Cancellation.thenApply(abortOnCancel(send(ImaggaMetrics.DIRECT_TAGS, request), body),
+            httpResponse -> extractDirectKeywords(httpResponse, locale, requestedLanguages, blob, contentId), responseExecutor);
+  }
+
+  @Nullable
+  private String getLanguageParameter(@Nullable Locale locale, List<String> requestedLanguages) {
+    return locale != null || requestedLanguages.size() > 1 || !languages.isEmpty() ? "language=" + String.join(",", requestedLanguages) : null;
+  }
+
+  private String getLimitParameter() {
+    return "limit=" + queryLimit;
+  }
+
+  private String getThresholdParameter() {
+    return "threshold=" + queryMinAccuracy + ".0";
+  }
+
+  private CompletableFuture<HttpResponse<InputStream>> send(String phase, HttpRequest request) {
+    return retryPolicy.execute(() -> circuitBreaker.execute(() -> measured(phase, request)));
+  }
+
+  /**
+   * Like {@link #send(String, HttpRequest)}, but with hedging, if enabled.
+   */
+  private CompletableFuture<HttpResponse<InputStream>> sendIdempotent(String phase, HttpRequest request) {
+    return hedgedRequests != null ? hedgedRequests.send(() -> send(phase, request)) : send(phase, request);
+  }
+
+  /**
+   * Stops streaming the picture if the request is cancelled.
+   * <p>
+   * Before Java 16, cancellation does not abort the HTTP exchange, but the
+   * aborted body does.
+   */
+  private static CompletableFuture<HttpResponse<InputStream>> abortOnCancel(CompletableFuture<HttpResponse<InputStream>> response, MultipartBodyPublisher body) {
+    response.whenComplete((httpResponse, throwable) -> {
+      if (response.isCancelled()) {
+        body.abort();
+      }
+    });
+    return response;
+  }
+
+  private static FeedbackHubException timeout(String subject, @Nullable Duration deadline) {
+    return new FeedbackHubException(subject + " did not complete within " + deadline, ImaggaFeedbackHubErrorCode.TIMEOUT, null);
+  }
+
+  private CompletableFuture<HttpResponse<InputStream>> measured(String phase, HttpRequest request) {
+    long start = metrics.requestStarted();
+    CompletableFuture<HttpResponse<InputStream>> response = requestGovernor.send(client, request, HttpResponse.BodyHandlers.ofInputStream());
+    response.whenComplete((httpResponse, throwable) -> metrics.requestFinished(phase, start, httpResponse, throwable));
+    return response;
+  }
+
+  private HttpRequest.Builder newRequestBuilder() {
+    HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .header("Accept-Encoding", ImaggaResponseParser.ACCEPT_ENCODING);
+    if (requestTimeout != null) {
+      builder.timeout(requestTimeout);
+    }
+    return builder;
   }
 
   private static String concatUrlParameters(String... args) {
@@ -182,30 +678,114 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
     return params.isEmpty() ? "" : "?" + params;
   }
 
-  private List<Keyword> extractKeywords(HttpResponse<String> tagsResponse, String uploadId, @Nullable Locale locale, Blob blob) {
+  /**
+   * The language of the given locale first, followed by the configured
+   * languages.
+   */
+  private List<String> getRequestedLanguages(@Nullable Locale locale) {
+    Set<String> result = new LinkedHashSet<>();
+    result.add(getLanguage(locale));
+    result.addAll(languages);
+    return List.copyOf(result);
+  }
+
+  /**
+   * The requested languages, followed by the further languages whose tags
+   * are cached for the given upload ID.
+   */
+  private List<String> getCachedLanguages(String uploadId, @Nullable Locale locale) {
+    Set<String> result = new LinkedHashSet<>(getRequestedLanguages(locale));
+    if (cache != null) {
+      for (String language : tagsLanguages) {
+        // not a lookup on behalf of an editor, so not recorded in the metrics
+        if (cache.peek(new TagsCacheKey(uploadId, language, queryLimit, queryMinAccuracy)).isPresent()) {
+          result.add(language);
+        }
+      }
+    }
+    return List.copyOf(result);
+  }
+
+  private KeywordList extractKeywords(HttpResponse<InputStream> tagsResponse, String uploadId, @Nullable Locale locale, List<String> requestedLanguages, String contentId) {
     if (tagsResponse.statusCode() == 200) {
-      List<Keyword> keywords = getKeywordsFromResponse(locale, tagsResponse);
+      Map<String, KeywordList> keywordsByLanguage = getKeywordsFromResponse(ImaggaMetrics.TAGS, requestedLanguages, tagsResponse, contentId);
+      store(contentId, keywordsByLanguage);
+      tagsLanguages.addAll(keywordsByLanguage.keySet());
       // Cache a little longer than the uploadId, to prevent a second round trip with the same uploadId.
-      return cached(new TagsCacheKey(uploadId, locale, limit, minAccuracy), keywords, 23 * 60 + 1L, TimeUnit.MINUTES, null);
+      keywordsByLanguage.forEach((language, keywords) -> {
+        TagsCacheKey cacheKey = new TagsCacheKey(uploadId, language, queryLimit, queryMinAccuracy);
+        cached(cacheKey, keywords, 23 * 60 + 1L, TimeUnit.MINUTES, null);
+        if (sharedCache != null) {
+          sharedCache.putKeywords(cacheKey.sharedKey(), keywords, Duration.ofMinutes(23 * 60 + 1L));
+        }
+      });
+      return keywordsByLanguage.get(getLanguage(locale));
     } else {
       // Robustness against Imagga: Sometimes they cannot handle their own
       // uploadIds. (E.g. the tags request fails with code 400, which we
       // observed during development.)  Invalidate the uploadId in such cases,
       // so that an editor's retry starts over with a complete new roundtrip.
-      if (cache != null) {
-        cache.invalidate(new UploadIdCacheKey(blob, url, basicAuthKey).asDependency());
+      if (tagsResponse.statusCode() == BAD_REQUEST) {
+        invalidateUploadId(contentId);
       }
-      ImaggaFeedbackHubErrorCode errorCode;
-      List<String> arguments = null;
-      if(tagsResponse.statusCode() == 401){
-        errorCode = ImaggaFeedbackHubErrorCode.LOGIN_ERROR;
-      } else {
-        arguments = Collections.singletonList(getErrorMessageFromResponse(tagsResponse));
-        errorCode = ImaggaFeedbackHubErrorCode.GET_TAGS_FROM_UPLOAD_FAILED;
-      }
-      throw new FeedbackHubException("The request for tags with uploadId '" + uploadId + "' " +
-              "failed with status Code '" + tagsResponse.statusCode() + "' and message:'" + tagsResponse.body() + "'", errorCode, arguments);
+      throw requestFailed(tagsResponse, "tags with uploadId '" + uploadId + "'");
+    }
+  }
+
+  private void invalidateUploadId(String contentId) {
+    UploadIdCacheKey uploadIdCacheKey = new UploadIdCacheKey(contentId, url, basicAuthKey);
+    if (cache != null) {
+      cache.invalidate(uploadIdCacheKey.asDependency());
+    }
+    if (sharedCache != null) {
+      sharedCache.remove(uploadIdCacheKey.sharedKey());
+    }
+  }
+
+  private KeywordList extractDirectKeywords(HttpResponse<InputStream> tagsResponse, @Nullable Locale locale, List<String> requestedLanguages, Blob blob, String contentId) {
+    if (tagsResponse.statusCode() == 200) {
+      Map<String, KeywordList> keywordsByLanguage = getKeywordsFromResponse(ImaggaMetrics.DIRECT_TAGS, requestedLanguages, tagsResponse, contentId);
+      store(contentId, keywordsByLanguage);
+      // Without an upload ID, there is nothing that expires at Imagga, so
+      // the time limit only bounds the staleness of the result.
+      keywordsByLanguage.forEach((language, keywords) -> {
+        ContentTagsCacheKey cacheKey = new ContentTagsCacheKey(contentId, url, basicAuthKey, language, queryLimit, queryMinAccuracy);
+        cached(cacheKey, keywords, 24, TimeUnit.HOURS, null);
+        refreshAhead.cached(cacheKey, Duration.ofHours(24));
+        if (sharedCache != null) {
+          sharedCache.putKeywords(cacheKey.sharedKey(), keywords, Duration.ofHours(24));
+        }
+      });
+      return keywordsByLanguage.get(getLanguage(locale));
+    } else {
+      // Unlike a tags request with an upload ID, this request contains
+      // the picture, so a rejection may be due to the picture.
+      FeedbackHubException failure = requestFailed(tagsResponse, "tags for the blob with eTag '" + blob.getETag() + "'");
+      throw isPictureRejected(tagsResponse.statusCode()) ? knownFailure(contentId, failure) : failure;
+    }
+  }
+
+  private void store(String contentId, Map<String, KeywordList> keywordsByLanguage) {
+    if (keywordStore != null) {
+      keywordsByLanguage.forEach((language, keywords) -> keywordStore.store(storeKey(contentId, language), keywords));
+    }
+  }
+
+  /**
+   * @param subject what was requested, e.g. "tags with uploadId '...'"
+   */
+  private static RequestFailedException requestFailed(HttpResponse<InputStream> response, String subject) {
+    String body = ImaggaResponseParser.readErrorBody(response);
+    ImaggaFeedbackHubErrorCode errorCode;
+    List<String> arguments = null;
+    if(response.statusCode() == 401){
+      errorCode = ImaggaFeedbackHubErrorCode.LOGIN_ERROR;
+    } else {
+      arguments = Collections.singletonList(getErrorMessageFromResponse(body));
+      errorCode = ImaggaFeedbackHubErrorCode.GET_TAGS_FROM_UPLOAD_FAILED;
     }
+    return new RequestFailedException("The request for " + subject + " " +
+            "failed with status Code '" + response.statusCode() + "' and message:'" + body + "'", errorCode, arguments, response.statusCode());
   }
 
 
@@ -220,73 +800,98 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
     return language;
   }
 
-  private String getErrorMessageFromResponse(HttpResponse<String> response) {
+  private static String getErrorMessageFromResponse(String body) {
+    if (body.isEmpty()) {
+      return "";
+    }
     try {
-      String body = response.body();
-      String imaggaErrorMessage = "";
-      if (body != null && !body.isEmpty()) {
-        JsonElement responseBody = jsonParser.parse(body);
-        JsonObject status = responseBody.getAsJsonObject().getAsJsonObject(STATUS_KEY);
-        if (status != null) {
-          JsonElement text = status.get(TEXT_KEY);
-          imaggaErrorMessage = text.getAsString();
-        }
-      }
-      return imaggaErrorMessage;
+      return ImaggaResponseParser.parseErrorMessage(new StringReader(body));
     } catch (Exception e) {
-      throw new FeedbackHubException("There was an exception while processing the response: '" + response.body() + "'", ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+      throw new FeedbackHubException("There was an exception while processing the response: '" + body + "'", ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
     }
   }
 
-  private String getUploadIdFromResponse(HttpResponse<String> response) {
-    try {
-      JsonObject responseJson = jsonParser.parse(response.body()).getAsJsonObject();
-      JsonObject result = responseJson.getAsJsonObject(RESULT_KEY);
-      return result.get(UPLOAD_ID_KEY).getAsString();
+  private String getUploadIdFromResponse(HttpResponse<InputStream> response, String contentId) {
+    long start = metrics.parseStarted();
+    try (Reader body = ImaggaResponseParser.asReader(metrics.countResponseBytes(ImaggaMetrics.UPLOAD,
+            ImaggaResponseParser.openBody(response, ImaggaResponseParser.MAX_UPLOAD_RESPONSE_BYTES)))) {
+      String uploadId = ImaggaResponseParser.parseUploadId(body);
+      metrics.parseFinished(ImaggaMetrics.UPLOAD, start);
+      return uploadId;
     } catch (Exception e) {
-      throw new FeedbackHubException("There was an exception while processing the response: '" + response.body() + "'", ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+      FeedbackHubException failure = new FeedbackHubException("There was an exception while processing the upload response", e, ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+      throw isMalformed(e) ? knownFailure(contentId, failure) : failure;
     }
   }
 
   // impl note: getKeywordsFromResponse must not filter the result,
   // because we pose a limited query, and post filtering limited queries
-  // corrupts the result.  If you need filtering, remove the limit parameter
-  // from the request and apply the limit here, after the filtering.
-  private List<Keyword> getKeywordsFromResponse(@Nullable Locale locale, HttpResponse<String> response) {
-    try {
-      List<Keyword> resultKeyWords = new ArrayList<>();
-      JsonElement responseBody = jsonParser.parse(response.body());
-      JsonObject responseJson = responseBody.getAsJsonObject();
-      JsonObject result = responseJson.getAsJsonObject(RESULT_KEY);
-      result.getAsJsonArray(TAGS_KEY).forEach(tag -> {
-        JsonObject tagObject = tag.getAsJsonObject();
-        double confidence = tagObject.get(CONFIDENCE_KEY).getAsDouble();
-        JsonObject tagObjectAsJsonObject = tagObject.getAsJsonObject(TAG_KEY);
-        String tagValue = tagObjectAsJsonObject.get(getLanguage(locale)).getAsString();
-        resultKeyWords.add(new Keyword(tagValue, confidence));
-      });
-      return resultKeyWords;
+  // corrupts the result.  In full tag list mode, the query is unlimited,
+  // and select applies the limit after the threshold.
+  private Map<String, KeywordList> getKeywordsFromResponse(String phase, List<String> requestedLanguages, HttpResponse<InputStream> response, String contentId) {
+    long start = metrics.parseStarted();
+    try (Reader body = ImaggaResponseParser.asReader(metrics.countResponseBytes(phase,
+            ImaggaResponseParser.openBody(response, ImaggaResponseParser.MAX_RESPONSE_BYTES)))) {
+      Map<String, KeywordList> keywords = ImaggaResponseParser.parseTags(body, requestedLanguages);
+      if (fullTagList) {
+        // Imagga sorts the tags anyway, but the selection relies on it.
+        keywords.replaceAll((language, list) -> list.sortedByConfidence());
+      }
+      metrics.parseFinished(phase, start);
+      return keywords;
     } catch (Exception e) {
-      throw new FeedbackHubException("There was an exception while processing the response: '" + response.body() + "'", e, ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+      FeedbackHubException failure = new FeedbackHubException("There was an exception while processing the tags response", e, ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON, null);
+      throw isMalformed(e) ? knownFailure(contentId, failure) : failure;
     }
   }
 
   /**
-   * A multipart request should have the following structure:
-   *
-   ** Content-Type: multipart/form-data; boundary=ImageUpload
-   *
-   *+ --ImageUpload
-   ** Content-Disposition: form-data; name="image"
-   ** <…file content…>
-   *
-   *  ImageUpload--
+   * Whether a response could not be processed because of its content, so
+   * that the failure would recur.
+   * <p>
+   * I/O errors while the body is read, including an exceeded size limit,
+   * are no such failures.
    */
-  private Supplier<InputStream> getInputStreamSupplierForBlob(Blob blob) {
-    String crlf = "\r\n";
-    String twoHyphens = "--";
+  private static boolean isMalformed(Exception e) {
+    return e instanceof JsonParseException || e instanceof MalformedJsonException ||
+            e instanceof IllegalStateException || e instanceof NumberFormatException;
+  }
 
-    String prefix = (twoHyphens + BOUNDARY + crlf);
+  /**
+   * The multipart body with the picture for an upload or direct tags
+   * request.
+   */
+  private CompletionStage<MultipartBodyPublisher> getBodyPublisher(Blob blob, String contentId) {
+    CompletionStage<MultipartBodyPublisher> result;
+    if (maxImageEdge > 0) {
+      // Preprocessing reads and decodes the whole image, which must not
+      // happen in the caller's thread.
+      result = imagePreprocessor.prepare(blob, maxImageEdge)
+              .thenApply(image -> {
+                if (image.isOriginal()) {
+                  // ImageIO cannot decode it, but Imagga may.
+                  return getBodyPublisherForBlob(blob);
+                }
+                metrics.uploadBytes(image.getData().length);
+                return MultipartBodyPublisher.ofByteArray(blob.getETag() + "." + JPG, image.getData());
+              });
+    } else {
+      try {
+        result = CompletableFuture.completedFuture(getBodyPublisherForBlob(blob));
+      } catch (FeedbackHubException e) {
+        result = CompletableFuture.failedFuture(e);
+      }
+    }
+    return result.whenComplete((body, throwable) -> {
+      FeedbackHubException failure = throwable != null ? asFeedbackHubException(throwable) : null;
+      if (failure != null && (failure.getErrorCode() == ImaggaFeedbackHubErrorCode.NOT_SUPPORTED_FILE_TYPE ||
+              failure.getErrorCode() == ImaggaFeedbackHubErrorCode.IMAGE_PROCESSING_FAILED)) {
+        knownFailure(contentId, failure);
+      }
+    });
+  }
+
+  private MultipartBodyPublisher getBodyPublisherForBlob(Blob blob) {
     String blobName = blob.getETag();
     Optional<String> extension = blob.findExtension();
     if (extension.isPresent()) {
@@ -294,24 +899,23 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
       if(!fileExtension.equals(PNG) && !fileExtension.equals(JPG)){
         throw new FeedbackHubException("Unsupported file format. Only .png and .jpg are allowed", ImaggaFeedbackHubErrorCode.NOT_SUPPORTED_FILE_TYPE, Collections.singletonList(fileExtension));
       }
-      blobName = blobName + "." + extension;
+      blobName = blobName + "." + fileExtension;
     }
-    String parameters = ("Content-Disposition: form-data; name=\"image\";filename=\"" + blobName + "\"" + crlf);
-    String pictureContext = prefix + parameters + crlf;
-
-    ByteArrayInputStream pictureContextStream = new ByteArrayInputStream(pictureContext.getBytes());
-    ByteArrayInputStream endingForMultiPartStream = new ByteArrayInputStream((crlf + crlf + BOUNDARY + twoHyphens).getBytes());
-
-    SequenceInputStream sequenceInputStream = new SequenceInputStream(pictureContextStream, blob.getInputStream());
-    SequenceInputStream sequenceInputStreamWithEnding = new SequenceInputStream(sequenceInputStream, endingForMultiPartStream);
+    return MultipartBodyPublisher.ofInputStream(blobName, () -> countUploadBytes(blob.getInputStream()));
+  }
 
-    return () -> sequenceInputStreamWithEnding;
+  /**
+   * Records the size of the streamed picture once it is read.
+   */
+  private InputStream countUploadBytes(InputStream content) {
+    return metrics == ImaggaMetrics.NOOP ? content : new ReportingInputStream(content, metrics::uploadBytes);
   }
 
   @Nullable
   private <T> CompletableFuture<T> peekAsFuture(CacheKey<T> cacheKey) {
     if (cache != null) {
       PeekResult<T> peek = cache.peek(cacheKey);
+      metrics.cacheLookup(cacheKey, peek.isPresent());
       if (peek.isPresent()) {
         return CompletableFuture.completedFuture(peek.get());
       }
@@ -319,6 +923,42 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
     return null;
   }
 
+  /**
+   * Looks up an upload ID in the shared cache, before it is computed.
+   * <p>
+   * A hit is copied to the local cache, with the remaining time to live.
+   */
+  private CompletionStage<String> sharedUploadId(UploadIdCacheKey cacheKey, Supplier<CompletionStage<String>> computation) {
+    if (sharedCache == null) {
+      return computation.get();
+    }
+    return Cancellation.thenCompose(sharedCache.getString(cacheKey.sharedKey()), hit -> {
+      if (hit == null) {
+        return computation.get();
+      }
+      cached(cacheKey, hit.getValue(), hit.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS, cacheKey.asDependency());
+      refreshAhead.cached(cacheKey, hit.getTimeToLive());
+      return CompletableFuture.completedFuture(hit.getValue());
+    });
+  }
+
+  /**
+   * Like {@link #sharedUploadId(UploadIdCacheKey, Supplier)}, for keywords.
+   */
+  private CompletionStage<KeywordList> sharedKeywords(CacheKey<KeywordList> cacheKey, String sharedKey, Supplier<CompletionStage<KeywordList>> computation) {
+    if (sharedCache == null) {
+      return computation.get();
+    }
+    return Cancellation.thenCompose(sharedCache.getKeywords(sharedKey), hit -> {
+      if (hit == null) {
+        return computation.get();
+      }
+      KeywordList keywords = cached(cacheKey, hit.getValue(), hit.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS, null);
+      refreshAhead.cached(cacheKey, hit.getTimeToLive());
+      return CompletableFuture.completedFuture(keywords);
+    });
+  }
+
   private <T> T cached(CacheKey<T> cacheKey, T value, long duration, TimeUnit timeUnit, Object invalidationDependency) {
     if (cache != null) {
       TimedDependency timedDependency = cache.createRelativeTimedDependency(timeUnit.toMillis(duration));
@@ -331,10 +971,29 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
   }
 
 
+  // --- failures ---------------------------------------------------
+
+  /**
+   * A failed Imagga request, with the HTTP status of the response.
+   */
+  private static class RequestFailedException extends FeedbackHubException {
+    private final int statusCode;
+
+    RequestFailedException(String message, ImaggaFeedbackHubErrorCode errorCode, @Nullable List<String> arguments, int statusCode) {
+      super(message, errorCode, arguments);
+      this.statusCode = statusCode;
+    }
+
+    int getStatusCode() {
+      return statusCode;
+    }
+  }
+
+
   // --- cache keys -------------------------------------------------
 
   private static class UploadIdCacheKey extends CacheKey<String> {
-    private final String eTag;
+    private final String contentId;
 
     // Include url and authKey in the cache key, otherwise you could not
     // check configuration changes immediately.  During regular productive
@@ -342,8 +1001,8 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
     private final String url;
     private final String authKey;
 
-    UploadIdCacheKey(@NonNull Blob blob, @NonNull String url, @NonNull String authKey) {
-      eTag = requireNonNull(blob.getETag(), "blob must have an etag");
+    UploadIdCacheKey(@NonNull String contentId, @NonNull String url, @NonNull String authKey) {
+      this.contentId = requireNonNull(contentId);
       this.authKey = authKey;
       this.url = url;
     }
@@ -353,6 +1012,16 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
       throw new UnsupportedOperationException("My values can only be injected and peeked.");
     }
 
+    @Override
+    public String cacheClass(Cache cache, String value) {
+      return ImaggaCacheClasses.UPLOAD_IDS;
+    }
+
+    @Override
+    public int weight(Object key, String value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
@@ -362,39 +1031,225 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
         return false;
       }
       UploadIdCacheKey that = (UploadIdCacheKey) o;
-      return eTag.equals(that.eTag) &&
+      return contentId.equals(that.contentId) &&
               url.equals(that.url) &&
               authKey.equals(that.authKey);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(eTag, url, authKey);
+      return Objects.hash(contentId, url, authKey);
     }
 
     String asDependency() {
-      return eTag + ", " + url + ", " + authKey;
+      return contentId + ", " + url + ", " + authKey;
+    }
+
+    String sharedKey() {
+      return "upload-id|" + contentId + "|" + url + "|" + authKey;
     }
   }
 
-  private static class TagsCacheKey extends CacheKey<List<Keyword>> {
+  /**
+   * A failure which would recur for a picture, see
+   * {@link #knownFailure(String, FeedbackHubException)}.
+   * <p>
+   * Whether a picture is supported depends on the preprocessing, e.g. a
+   * GIF is converted with preprocessing and rejected without, so the
+   * maximum image edge is part of the key.
+   */
+  private static class KnownFailureCacheKey extends CacheKey<KnownFailure> {
+    private final String contentId;
+    private final String url;
+    private final String authKey;
+    private final int maxImageEdge;
+
+    KnownFailureCacheKey(@NonNull String contentId, @NonNull String url, @NonNull String authKey, int maxImageEdge) {
+      this.contentId = requireNonNull(contentId);
+      this.url = url;
+      this.authKey = authKey;
+      this.maxImageEdge = maxImageEdge;
+    }
+
+    @Override
+    public KnownFailure evaluate(Cache cache) {
+      throw new UnsupportedOperationException("My values can only be injected and peeked.");
+    }
+
+    @Override
+    public String cacheClass(Cache cache, KnownFailure value) {
+      return ImaggaCacheClasses.UPLOAD_IDS;
+    }
+
+    @Override
+    public int weight(Object key, KnownFailure value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      KnownFailureCacheKey that = (KnownFailureCacheKey) o;
+      return maxImageEdge == that.maxImageEdge &&
+              contentId.equals(that.contentId) &&
+              url.equals(that.url) &&
+              authKey.equals(that.authKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(contentId, url, authKey, maxImageEdge);
+    }
+  }
+
+  /**
+   * The essence of a FeedbackHubException, without the stack trace and
+   * the causes, which need not be kept in the cache.
+   */
+  private static class KnownFailure {
+    private final String message;
+    private final FeedbackHubErrorCode errorCode;
+    @Nullable
+    private final List<String> arguments;
+
+    KnownFailure(FeedbackHubException failure) {
+      this.message = String.valueOf(failure.getMessage());
+      this.errorCode = failure.getErrorCode();
+      this.arguments = failure.getArguments() == null ? null : List.copyOf(failure.getArguments());
+    }
+
+    FeedbackHubException toException() {
+      return new FeedbackHubException(message, errorCode, arguments);
+    }
+  }
+
+  /**
+   * The result of an analysis other than tags, see {@link ImageAnalysis}.
+   */
+  private static class AnalysisCacheKey<T> extends CacheKey<T> {
+    private final Analysis analysis;
     private final String uploadId;
-    private final Locale locale;
+    // further parameters of the analysis, like the language
+    private final String variant;
+
+    AnalysisCacheKey(Analysis analysis, String uploadId, String variant) {
+      this.analysis = analysis;
+      this.uploadId = requireNonNull(uploadId);
+      this.variant = variant;
+    }
+
+    @Override
+    public T evaluate(Cache cache) {
+      throw new UnsupportedOperationException("My values can only be injected and peeked.");
+    }
+
+    @Override
+    public String cacheClass(Cache cache, T value) {
+      return ImaggaCacheClasses.TAGS;
+    }
+
+    @Override
+    public int weight(Object key, T value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      AnalysisCacheKey<?> that = (AnalysisCacheKey<?>) o;
+      return analysis == that.analysis &&
+              uploadId.equals(that.uploadId) &&
+              variant.equals(that.variant);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(analysis, uploadId, variant);
+    }
+  }
+
+  private interface AnalysisParser<T> {
+    T parse(Reader body) throws IOException;
+  }
+
+  private static class FingerprintCacheKey extends CacheKey<String> {
+    private final String eTag;
+
+    FingerprintCacheKey(@NonNull String eTag) {
+      this.eTag = eTag;
+    }
+
+    @Override
+    public String evaluate(Cache cache) {
+      throw new UnsupportedOperationException("My values can only be injected and peeked.");
+    }
+
+    @Override
+    public String cacheClass(Cache cache, String value) {
+      return ImaggaCacheClasses.UPLOAD_IDS;
+    }
+
+    @Override
+    public int weight(Object key, String value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FingerprintCacheKey that = (FingerprintCacheKey) o;
+      return eTag.equals(that.eTag);
+    }
+
+    @Override
+    public int hashCode() {
+      return eTag.hashCode();
+    }
+  }
+
+  private static class TagsCacheKey extends CacheKey<KeywordList> {
+    private final String uploadId;
+    private final String language;
     private final int minAccuracy;
     private final int limit;
 
-    TagsCacheKey(String uploadId, @Nullable Locale locale, int minAccuracy, int limit) {
+    TagsCacheKey(String uploadId, String language, int minAccuracy, int limit) {
       this.uploadId = requireNonNull(uploadId);
-      this.locale = locale;
+      this.language = requireNonNull(language);
       this.minAccuracy = minAccuracy;
       this.limit = limit;
     }
 
     @Override
-    public List<Keyword> evaluate(Cache cache) {
+    public KeywordList evaluate(Cache cache) {
       throw new UnsupportedOperationException("My values can only be injected and peeked.");
     }
 
+    @Override
+    public String cacheClass(Cache cache, KeywordList value) {
+      return ImaggaCacheClasses.TAGS;
+    }
+
+    @Override
+    public int weight(Object key, KeywordList value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
@@ -407,12 +1262,79 @@ class ImaggaFeedbackHubAdapter implements BlobKeywordsFeedbackHubAdapter {
       return minAccuracy == that.minAccuracy &&
               limit == that.limit &&
               uploadId.equals(that.uploadId) &&
-              Objects.equals(locale, that.locale);
+              language.equals(that.language);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(uploadId, language, minAccuracy, limit);
+    }
+
+    String sharedKey() {
+      return "tags|" + uploadId + "|" + language + "|" + minAccuracy + "|" + limit;
+    }
+  }
+
+  /**
+   * Tags of direct tagging, which are identified by the content rather
+   * than by an upload ID.
+   */
+  private static class ContentTagsCacheKey extends CacheKey<KeywordList> {
+    private final String contentId;
+    private final String url;
+    private final String authKey;
+    private final String language;
+    private final int limit;
+    private final int minAccuracy;
+
+    ContentTagsCacheKey(String contentId, String url, String authKey, String language, int limit, int minAccuracy) {
+      this.contentId = requireNonNull(contentId);
+      this.url = url;
+      this.authKey = authKey;
+      this.language = requireNonNull(language);
+      this.limit = limit;
+      this.minAccuracy = minAccuracy;
+    }
+
+    @Override
+    public KeywordList evaluate(Cache cache) {
+      throw new UnsupportedOperationException("My values can only be injected and peeked.");
+    }
+
+    @Override
+    public String cacheClass(Cache cache, KeywordList value) {
+      return ImaggaCacheClasses.TAGS;
+    }
+
+    @Override
+    public int weight(Object key, KeywordList value, Cache cache) {
+      return ImaggaCacheClasses.weight(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ContentTagsCacheKey that = (ContentTagsCacheKey) o;
+      return limit == that.limit &&
+              minAccuracy == that.minAccuracy &&
+              contentId.equals(that.contentId) &&
+              url.equals(that.url) &&
+              authKey.equals(that.authKey) &&
+              language.equals(that.language);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(uploadId, locale, minAccuracy, limit);
+      return Objects.hash(contentId, url, authKey, language, limit, minAccuracy);
+    }
+
+    String sharedKey() {
+      return "content-tags|" + contentId + "|" + url + "|" + authKey + "|" + language + "|" + limit + "|" + minAccuracy;
     }
   }
 
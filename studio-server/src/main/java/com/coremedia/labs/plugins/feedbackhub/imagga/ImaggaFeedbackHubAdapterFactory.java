@@ -7,22 +7,99 @@ import com.coremedia.feedbackhub.adapter.FeedbackHubException;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 
 /**
  * Factory for {@link ImaggaFeedbackHubAdapter} instances
+ * <p>
+ * The factory owns the resources which it is given, and releases them when
+ * it is destroyed.
  */
 @DefaultAnnotation(NonNull.class)
-class ImaggaFeedbackHubAdapterFactory implements FeedbackHubAdapterFactory<ImaggaFeedbackHubAdapterSettings> {
+class ImaggaFeedbackHubAdapterFactory implements FeedbackHubAdapterFactory<ImaggaFeedbackHubAdapterSettings>, DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(ImaggaFeedbackHubAdapterFactory.class);
+
   private static final String DEFAULT_URL = "https://api.imagga.com/v2";
   private static final int DEFAULT_MIN_ACCURACY = 30;
   // imagga default value of the "limit" url param, means "no limit"
   private static final int DEFAULT_LIMIT = -1;
+  private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+  private static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 60;
+  private static final int DEFAULT_MAX_QUEUED_REQUESTS = 100;
+  private static final int DEFAULT_MAX_RETRIES = 2;
+  private static final int DEFAULT_RETRY_BACKOFF_MILLIS = 200;
+  private static final int DEFAULT_RETRY_DEADLINE_SECONDS = 30;
+  private static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+  private static final int DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION_SECONDS = 30;
+  // Refreshes repeat paid requests, so they are opt-in.
+  private static final int DEFAULT_REFRESH_AHEAD_WINDOW_MINUTES = 0;
+  private static final int SHARED_CACHE_THREADS = 4;
+  private static final String DEFAULT_CATEGORIZER = "personal_photos";
 
   @Nullable
   private final Cache cache;
+  @Nullable
+  private final KeywordStore keywordStore;
+  private final ImaggaMetrics metrics;
+  @Nullable
+  private final SharedCacheTier sharedCache;
+  private final InFlightRequests inFlightRequests = new InFlightRequests();
+  private final HttpClientRegistry httpClientRegistry;
+  @Nullable
+  private final ExecutorService clientExecutor;
+  @Nullable
+  private final ExecutorService responseExecutor;
+  private final RequestGovernorRegistry requestGovernorRegistry = new RequestGovernorRegistry();
+  private final CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry();
+  private final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  private final ContentFingerprinter contentFingerprinter = new ContentFingerprinter(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+  // Settings are resolved for every request, but usually they do not change.
+  // Reuse the adapters, so that they need not be set up over and over again.
+  private final BoundedRegistry<ImaggaAdapterOptions, ImaggaFeedbackHubAdapter> adapters = new BoundedRegistry<>(BoundedRegistry.DEFAULT_MAX_SIZE);
 
   ImaggaFeedbackHubAdapterFactory(@Nullable Cache cache) {
+    this(cache, null);
+  }
+
+  ImaggaFeedbackHubAdapterFactory(@Nullable Cache cache, @Nullable KeywordStore keywordStore) {
+    this(cache, keywordStore, ImaggaMetrics.NOOP);
+  }
+
+  ImaggaFeedbackHubAdapterFactory(@Nullable Cache cache, @Nullable KeywordStore keywordStore, ImaggaMetrics metrics) {
+    this(cache, keywordStore, metrics, null);
+  }
+
+  ImaggaFeedbackHubAdapterFactory(@Nullable Cache cache, @Nullable KeywordStore keywordStore, ImaggaMetrics metrics, @Nullable SharedCache sharedCache) {
+    this(cache, keywordStore, metrics, sharedCache, null, null);
+  }
+
+  /**
+   * @param clientExecutor the executor of the HttpClients, or null for the HttpClient's default
+   * @param responseExecutor the executor which processes the Imagga responses, or null for the HttpClient's threads
+   */
+  ImaggaFeedbackHubAdapterFactory(@Nullable Cache cache, @Nullable KeywordStore keywordStore, ImaggaMetrics metrics, @Nullable SharedCache sharedCache,
+                                  @Nullable ExecutorService clientExecutor, @Nullable ExecutorService responseExecutor) {
     this.cache = cache;
+    this.httpClientRegistry = new HttpClientRegistry(clientExecutor);
+    this.clientExecutor = clientExecutor;
+    this.responseExecutor = responseExecutor;
+    this.keywordStore = keywordStore;
+    this.metrics = metrics;
+    this.sharedCache = sharedCache == null ? null : new SharedCacheTier(sharedCache, SHARED_CACHE_THREADS);
+    metrics.monitor(inFlightRequests);
   }
 
   @Override
@@ -40,15 +117,116 @@ class ImaggaFeedbackHubAdapterFactory implements FeedbackHubAdapterFactory<Imagg
     if (url == null) {
       url = DEFAULT_URL;
     }
-    int minAccuracy = asInt(settings.getMinAccuracy(), DEFAULT_MIN_ACCURACY);
-    int limit = asInt(settings.getLimit(), DEFAULT_LIMIT);
-    return new ImaggaFeedbackHubAdapter(url, basicAuthKey, minAccuracy, limit, cache);
+    ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(url, basicAuthKey)
+            .minAccuracy(asInt(settings.getMinAccuracy(), DEFAULT_MIN_ACCURACY))
+            .limit(asInt(settings.getLimit(), DEFAULT_LIMIT))
+            .languages(asLanguages(settings.getLanguages()))
+            .connectTimeout(Duration.ofSeconds(asInt(settings.getConnectTimeout(), DEFAULT_CONNECT_TIMEOUT_SECONDS)))
+            .requestTimeout(asDuration(asInt(settings.getRequestTimeout(), DEFAULT_REQUEST_TIMEOUT_SECONDS)))
+            .uploadDeadline(asDuration(settings.getUploadDeadline()))
+            .tagsDeadline(asDuration(settings.getTagsDeadline()))
+            .preferHttp2(asBoolean(settings.getPreferHttp2(), true))
+            .warmUpConnection(asBoolean(settings.getWarmUpConnection(), false))
+            .maxImageEdge(Math.max(0, asInt(settings.getMaxImageEdge(), 0)))
+            .contentFingerprint(asBoolean(settings.getContentFingerprint(), false))
+            .directTagging(asBoolean(settings.getDirectTagging(), false))
+            .fullTagList(asBoolean(settings.getFullTagList(), false))
+            .maxRequestsPerSecond(Math.max(0, asInt(settings.getMaxRequestsPerSecond(), 0)))
+            .maxConcurrentRequests(Math.max(0, asInt(settings.getMaxConcurrentRequests(), 0)))
+            .maxQueuedRequests(Math.max(0, asInt(settings.getMaxQueuedRequests(), DEFAULT_MAX_QUEUED_REQUESTS)))
+            .maxRetries(Math.max(0, asInt(settings.getMaxRetries(), DEFAULT_MAX_RETRIES)))
+            .retryBackoff(Duration.ofMillis(Math.max(0, asInt(settings.getRetryBackoff(), DEFAULT_RETRY_BACKOFF_MILLIS))))
+            .retryDeadline(Duration.ofSeconds(Math.max(0, asInt(settings.getRetryDeadline(), DEFAULT_RETRY_DEADLINE_SECONDS))))
+            .hedgeTagsRequests(asBoolean(settings.getHedgeTagsRequests(), false))
+            .circuitBreakerFailureThreshold(Math.max(0, asInt(settings.getCircuitBreakerFailureThreshold(), DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD)))
+            .circuitBreakerOpenDuration(Duration.ofSeconds(Math.max(1, asInt(settings.getCircuitBreakerOpenDuration(), DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION_SECONDS))))
+            .refreshAheadWindow(Duration.ofMinutes(Math.max(0, asInt(settings.getRefreshAheadWindow(), DEFAULT_REFRESH_AHEAD_WINDOW_MINUTES))))
+            .analyses(asAnalyses(settings.getAnalyses()))
+            .categorizer(asString(settings.getCategorizer(), DEFAULT_CATEGORIZER))
+            .build();
+    return adapters.computeIfAbsent(options, this::createAdapter);
+  }
+
+  @Override
+  public void destroy() {
+    if (sharedCache != null) {
+      sharedCache.shutdown();
+    }
+    if (keywordStore != null) {
+      keywordStore.close();
+    }
+    imagePreprocessor.shutdown();
+    contentFingerprinter.shutdown();
+    // Requests which are still running may complete, but no new ones start.
+    if (responseExecutor != null) {
+      responseExecutor.shutdown();
+    }
+    if (clientExecutor != null) {
+      clientExecutor.shutdown();
+    }
+  }
+
+  private ImaggaFeedbackHubAdapter createAdapter(ImaggaAdapterOptions options) {
+    return new ImaggaFeedbackHubAdapter(options, ImaggaAdapterDependencies.builder(httpClientRegistry.getClient(options))
+            .cache(cache)
+            .inFlightRequests(inFlightRequests)
+            .requestGovernor(requestGovernorRegistry.getGovernor(options))
+            .circuitBreaker(circuitBreakerRegistry.getCircuitBreaker(options))
+            .imagePreprocessor(imagePreprocessor)
+            .keywordStore(keywordStore)
+            .contentFingerprinter(contentFingerprinter)
+            .metrics(metrics)
+            .sharedCache(sharedCache)
+            .responseExecutor(responseExecutor)
+            .build());
+  }
+
+  private static List<String> asLanguages(@Nullable List<String> values) {
+    if (values == null) {
+      return Collections.emptyList();
+    }
+    return values.stream()
+            .filter(Objects::nonNull)
+            .map(value -> value.trim().toLowerCase(Locale.ROOT))
+            .filter(value -> !value.isEmpty())
+            .distinct()
+            .collect(Collectors.toUnmodifiableList());
+  }
+
+  private static Set<ImageAnalysis.Analysis> asAnalyses(@Nullable List<String> values) {
+    Set<ImageAnalysis.Analysis> result = EnumSet.noneOf(ImageAnalysis.Analysis.class);
+    if (values != null) {
+      for (String value : values) {
+        if (value == null || value.isBlank()) {
+          continue;
+        }
+        try {
+          result.add(ImageAnalysis.Analysis.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+          LOG.warn("Ignoring unknown Imagga analysis '{}'", value);
+        }
+      }
+    }
+    return result.isEmpty() ? EnumSet.of(ImageAnalysis.Analysis.TAGS) : result;
+  }
+
+  private static String asString(@Nullable String value, String dflt) {
+    return value != null && !value.isBlank() ? value.trim() : dflt;
   }
 
   private static int asInt(Integer value, int dflt) {
     return value!=null ? value : dflt;
   }
 
+  private static boolean asBoolean(Boolean value, boolean dflt) {
+    return value!=null ? value : dflt;
+  }
+
+  @Nullable
+  private static Duration asDuration(@Nullable Integer seconds) {
+    return seconds!=null && seconds > 0 ? Duration.ofSeconds(seconds) : null;
+  }
+
   @Override
   public String toString() {
     return ImaggaFeedbackHubAdapterFactory.class.getName();
@@ -2,6 +2,8 @@ package com.coremedia.labs.plugins.feedbackhub.imagga;
 
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.util.List;
+
 /**
  * ImaggaFeedbackHubAdapterSettings declares the properties for the
  * {@link ImaggaFeedbackHubAdapter}.
@@ -44,4 +46,250 @@ interface ImaggaFeedbackHubAdapterSettings {
    */
   @Nullable
   Integer getLimit();
+
+  /**
+   * Additional languages to fetch with every tags request.
+   * <p>
+   * The values are ISO 639-1 language codes, like "de" or "fr".  The tags
+   * request always includes the language of the editor's locale, and
+   * additionally fetches these languages, so that switching the locale in
+   * Studio is a cache hit.
+   * Default is no additional languages.
+   */
+  @Nullable
+  List<String> getLanguages();
+
+  /**
+   * The timeout in seconds for establishing a connection to Imagga.
+   * <p>
+   * Default is 10.
+   */
+  @Nullable
+  Integer getConnectTimeout();
+
+  /**
+   * The timeout in seconds for a single request to Imagga, measured until
+   * the response headers arrive.  A timeout counts as a failure for the
+   * circuit breaker, so that an unresponsive Imagga opens it.
+   * <p>
+   * Default is 60, 0 disables the timeout.
+   */
+  @Nullable
+  Integer getRequestTimeout();
+
+  /**
+   * The time limit in seconds for the upload of a picture, including the
+   * preprocessing and retries.
+   * <p>
+   * If the upload takes longer, it is cancelled and fails with a timeout
+   * error.  In direct tagging mode, the tags request is limited by the sum
+   * of the upload and tags deadlines.
+   * Default is no limit.
+   */
+  @Nullable
+  Integer getUploadDeadline();
+
+  /**
+   * The time limit in seconds for the tags request of an uploaded picture,
+   * including retries and hedged requests.
+   * <p>
+   * If the request takes longer, it is cancelled and fails with a timeout
+   * error.
+   * Default is no limit.
+   */
+  @Nullable
+  Integer getTagsDeadline();
+
+  /**
+   * Whether HTTP/2 should be preferred.
+   * <p>
+   * If false, HTTP/1.1 is used.  Default is true.
+   */
+  @Nullable
+  Boolean getPreferHttp2();
+
+  /**
+   * Whether to establish a connection to Imagga in the background as soon
+   * as the adapter is set up, so that the first editor request does not
+   * pay for the TLS handshake.
+   * <p>
+   * Default is false.
+   */
+  @Nullable
+  Boolean getWarmUpConnection();
+
+  /**
+   * The maximum edge length in pixels of images uploaded to Imagga.
+   * <p>
+   * If set, images are decoded, scaled down to this size and uploaded as
+   * JPEG.  This saves upload time for large images, since Imagga's tagging
+   * quality does not benefit from high resolutions, and it enables further
+   * formats like GIF, BMP and TIFF.  A value of about 1000 is a reasonable
+   * choice.
+   * Default is no preprocessing, the original blob is uploaded.
+   */
+  @Nullable
+  Integer getMaxImageEdge();
+
+  /**
+   * Whether Imagga results are cached by a hash of the image content
+   * rather than by the blob's eTag.
+   * <p>
+   * If enabled, copies of the same image, e.g. in several sites, share one
+   * Imagga upload and tags result.  The price is that each blob is read
+   * once more, in order to compute the hash.
+   * Default is false.
+   */
+  @Nullable
+  Boolean getContentFingerprint();
+
+  /**
+   * Whether pictures are posted to Imagga's tags endpoint directly, instead
+   * of being uploaded first.
+   * <p>
+   * This saves one round trip on every cache miss.  Without an upload ID,
+   * however, each further language that is not among the configured
+   * languages costs another transfer of the picture.
+   * Default is false.
+   */
+  @Nullable
+  Boolean getDirectTagging();
+
+  /**
+   * Whether the complete tag list of a picture is fetched from Imagga and
+   * cached, instead of the tags according to minAccuracy and limit.
+   * <p>
+   * The tags according to minAccuracy and limit are then selected from
+   * the cached list, so that sites with different settings, or a change of
+   * the settings, cause no further tags requests.  The cached lists are
+   * larger, though.
+   * Default is false.
+   */
+  @Nullable
+  Boolean getFullTagList();
+
+  /**
+   * The maximum number of requests per second to Imagga, according to the
+   * Imagga plan.
+   * <p>
+   * Further requests are delayed.  The limit applies to all sites which use
+   * the same URL and key.
+   * Default is 0, which means no limit.
+   */
+  @Nullable
+  Integer getMaxRequestsPerSecond();
+
+  /**
+   * The maximum number of concurrent requests to Imagga, according to the
+   * Imagga plan.
+   * <p>
+   * The limit applies to all sites which use the same URL and key.
+   * Default is 0, which means no limit.
+   */
+  @Nullable
+  Integer getMaxConcurrentRequests();
+
+  /**
+   * The maximum number of requests that wait for the rate or concurrency
+   * limit.
+   * <p>
+   * If the queue is full, further requests fail immediately.
+   * Default is 100.
+   */
+  @Nullable
+  Integer getMaxQueuedRequests();
+
+  /**
+   * The number of retries of a request to Imagga which failed for transient
+   * reasons, i.e. I/O errors or server errors.
+   * <p>
+   * Default is 2.
+   */
+  @Nullable
+  Integer getMaxRetries();
+
+  /**
+   * The maximum delay in milliseconds before the first retry.
+   * <p>
+   * The maximum delay doubles with each further retry, and the actual delay
+   * is a random value below it.
+   * Default is 200.
+   */
+  @Nullable
+  Integer getRetryBackoff();
+
+  /**
+   * The time in seconds after the first attempt of a request, after which
+   * no further retry is started.
+   * <p>
+   * Default is 30.
+   */
+  @Nullable
+  Integer getRetryDeadline();
+
+  /**
+   * Whether a second tags request is sent if the first one takes longer
+   * than 95% of the recent tags requests.
+   * <p>
+   * This cuts the long tail of the latency at the price of a few percent
+   * more tags requests.
+   * Default is false.
+   */
+  @Nullable
+  Boolean getHedgeTagsRequests();
+
+  /**
+   * The number of consecutive failed requests, after which requests to
+   * Imagga fail immediately for a while.
+   * <p>
+   * Failures are network errors, server errors and a rejected key.  This
+   * spares the editors the timeouts during an Imagga outage.  0 disables
+   * the circuit breaker.
+   * Default is 5.
+   */
+  @Nullable
+  Integer getCircuitBreakerFailureThreshold();
+
+  /**
+   * The time in seconds for which requests fail immediately, before a probe
+   * request checks whether Imagga is available again.
+   * <p>
+   * Default is 30.
+   */
+  @Nullable
+  Integer getCircuitBreakerOpenDuration();
+
+  /**
+   * The time in minutes before their expiry, in which the cached results of
+   * popular pictures are refreshed in the background.
+   * <p>
+   * A result is refreshed if an editor requests it within this time, and it
+   * has been requested before.  So frequently used pictures never wait for
+   * Imagga, at the price of some more requests, which are paid like the
+   * editors' ones.  Therefore, refresh-ahead is opt-in.
+   * Default is 0, which disables refresh-ahead.
+   */
+  @Nullable
+  Integer getRefreshAheadWindow();
+
+  /**
+   * The analyses of {@link ImageAnalysis}, out of "tags", "categories",
+   * "colors" and "croppings".
+   * <p>
+   * The analyses other than the tags are paid requests, so they are
+   * requested only by {@link ImageAnalysis#analyze}, in parallel and all
+   * with the same upload, never along with keyword requests.
+   * <p>
+   * Default is "tags" only.
+   */
+  @Nullable
+  List<String> getAnalyses();
+
+  /**
+   * The Imagga categorizer of the categories analysis.
+   * <p>
+   * Default is "personal_photos".
+   */
+  @Nullable
+  String getCategorizer();
 }
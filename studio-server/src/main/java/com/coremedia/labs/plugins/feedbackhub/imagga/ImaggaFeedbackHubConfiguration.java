@@ -5,10 +5,16 @@ import com.coremedia.cache.config.CacheConfiguration;
 import com.coremedia.feedbackhub.adapter.FeedbackHubAdapterFactory;
 import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
 @Configuration(proxyBeanMethods = false)
 @Import({
         CacheConfiguration.class,
@@ -16,7 +22,38 @@ import org.springframework.context.annotation.Import;
 @DefaultAnnotation(NonNull.class)
 public class ImaggaFeedbackHubConfiguration {
   @Bean
-  public FeedbackHubAdapterFactory imaggaFeedbackHubAdapterFactory(Cache cache) {
-    return new ImaggaFeedbackHubAdapterFactory(cache);
+  public FeedbackHubAdapterFactory imaggaFeedbackHubAdapterFactory(Cache cache,
+                                                                   ObjectProvider<MeterRegistry> meterRegistry,
+                                                                   ObjectProvider<SharedCache> sharedCache,
+                                                                   @Value("${feedbackhub.imagga.keyword-store.directory:}") String keywordStoreDirectory,
+                                                                   @Value("${feedbackhub.imagga.keyword-store.max-size:1073741824}") long keywordStoreMaxSize,
+                                                                   @Value("${feedbackhub.imagga.shared-cache.directory:}") String sharedCacheDirectory,
+                                                                   @Value("${feedbackhub.imagga.cache.upload-ids.capacity:16777216}") long uploadIdsCacheCapacity,
+                                                                   @Value("${feedbackhub.imagga.cache.tags.capacity:134217728}") long tagsCacheCapacity,
+                                                                   @Value("${feedbackhub.imagga.http-client.executor.mode:default}") String clientExecutorMode,
+                                                                   @Value("${feedbackhub.imagga.http-client.executor.threads:0}") int clientExecutorThreads,
+                                                                   @Value("${feedbackhub.imagga.response-processing.mode:default}") String responseExecutorMode,
+                                                                   @Value("${feedbackhub.imagga.response-processing.threads:0}") int responseExecutorThreads) {
+    // The Imagga entries have their own cache classes, with capacities in
+    // bytes, so that they do not evict Studio's other cache entries.
+    ImaggaCacheClasses.configure(cache, uploadIdsCacheCapacity, tagsCacheCapacity);
+    // The keyword store is optional, it is enabled by configuring a directory.
+    KeywordStore keywordStore = keywordStoreDirectory.isBlank() ? null : new KeywordStore(Path.of(keywordStoreDirectory), keywordStoreMaxSize);
+    // Metrics are optional, too, they are recorded if the application has a MeterRegistry.
+    MeterRegistry registry = meterRegistry.getIfAvailable();
+    ImaggaMetrics metrics = registry == null ? ImaggaMetrics.NOOP : new MicrometerImaggaMetrics(registry);
+    // The shared cache is optional as well.  A SharedCache bean takes
+    // precedence over a shared directory.
+    SharedCache shared = sharedCache.getIfAvailable(
+            () -> sharedCacheDirectory.isBlank() ? null : new FileSystemSharedCache(Path.of(sharedCacheDirectory)));
+    // By default, the HttpClient's threads do the I/O and process the
+    // responses.  Dedicated executors let both scale independently.  The
+    // factory shuts them down when it is destroyed.
+    int processors = Runtime.getRuntime().availableProcessors();
+    ExecutorService clientExecutor = ImaggaExecutors.create(ImaggaExecutors.asMode(clientExecutorMode),
+            clientExecutorThreads > 0 ? clientExecutorThreads : processors, "imagga-http-client");
+    ExecutorService responseExecutor = ImaggaExecutors.create(ImaggaExecutors.asMode(responseExecutorMode),
+            responseExecutorThreads > 0 ? responseExecutorThreads : processors, "imagga-response-processing");
+    return new ImaggaFeedbackHubAdapterFactory(cache, keywordStore, metrics, shared, clientExecutor, responseExecutor);
   }
 }
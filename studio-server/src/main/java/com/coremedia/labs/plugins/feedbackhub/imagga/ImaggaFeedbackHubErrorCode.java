@@ -11,5 +11,9 @@ enum ImaggaFeedbackHubErrorCode implements FeedbackHubErrorCode {
   LOGIN_ERROR,
   GET_TAGS_FROM_UPLOAD_FAILED,
   ERROR_PROCESSING_JSON,
-  NOT_SUPPORTED_FILE_TYPE
+  NOT_SUPPORTED_FILE_TYPE,
+  IMAGE_PROCESSING_FAILED,
+  TOO_MANY_REQUESTS,
+  SERVICE_UNAVAILABLE,
+  TIMEOUT
 }
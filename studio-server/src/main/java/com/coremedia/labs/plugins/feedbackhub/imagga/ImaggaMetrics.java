@@ -0,0 +1,78 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.CacheKey;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+
+/**
+ * Instrumentation of the keyword pipeline.
+ * <p>
+ * All methods have no-op defaults, and {@link #NOOP} is used if there is no
+ * meter registry, so that uninstrumented installations do not even take
+ * timestamps.
+ */
+@DefaultAnnotation(NonNull.class)
+interface ImaggaMetrics {
+  ImaggaMetrics NOOP = new ImaggaMetrics() {};
+
+  // Phases
+  String UPLOAD = "upload";
+  String TAGS = "tags";
+  String DIRECT_TAGS = "direct-tags";
+  String CATEGORIES = "categories";
+  String COLORS = "colors";
+  String CROPPINGS = "croppings";
+
+  /**
+   * Called when a request is sent.
+   *
+   * @return the start time, to be passed to {@link #requestFinished}
+   */
+  default long requestStarted() {
+    return 0;
+  }
+
+  /**
+   * Called when a request is finished, either with a response or with a
+   * failure.
+   */
+  default void requestFinished(String phase, long start, @Nullable HttpResponse<?> response, @Nullable Throwable throwable) {
+  }
+
+  /**
+   * @return the start time, to be passed to {@link #parseFinished}
+   */
+  default long parseStarted() {
+    return 0;
+  }
+
+  default void parseFinished(String phase, long start) {
+  }
+
+  default void cacheLookup(CacheKey<?> cacheKey, boolean hit) {
+  }
+
+  /**
+   * Records the size of an uploaded picture, whether preprocessed or
+   * streamed from the blob.
+   */
+  default void uploadBytes(long bytes) {
+  }
+
+  /**
+   * Wraps a response body, in order to measure its size.
+   */
+  default InputStream countResponseBytes(String phase, InputStream body) {
+    return body;
+  }
+
+  /**
+   * Exposes the number of coalesced computations.
+   */
+  default void monitor(InFlightRequests inFlightRequests) {
+  }
+}
@@ -0,0 +1,442 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming parser for Imagga responses.
+ * <p>
+ * Tags responses of unlimited queries contain hundreds of tags, each in
+ * all requested languages.  The parser reads the response stream token by
+ * token and skips everything it does not need, instead of building the
+ * complete JSON tree.
+ * <p>
+ * Response bodies are decompressed if the server sent them gzip encoded,
+ * and they are capped, so that a runaway body cannot exhaust the heap.
+ */
+@DefaultAnnotation(NonNull.class)
+class ImaggaResponseParser {
+  //JSON keys
+  private static final String UPLOAD_ID_KEY = "upload_id";
+  private static final String RESULT_KEY = "result";
+  private static final String TAGS_KEY = "tags";
+  private static final String CONFIDENCE_KEY = "confidence";
+  private static final String TAG_KEY = "tag";
+  private static final String STATUS_KEY = "status";
+  private static final String TEXT_KEY = "text";
+  private static final String CATEGORIES_KEY = "categories";
+  private static final String NAME_KEY = "name";
+  private static final String COLORS_KEY = "colors";
+  private static final String IMAGE_COLORS_KEY = "image_colors";
+  private static final String HTML_CODE_KEY = "html_code";
+  private static final String PERCENT_KEY = "percent";
+  private static final String CROPPINGS_KEY = "croppings";
+  private static final List<String> CROPPING_KEYS = List.of("x1", "y1", "x2", "y2");
+
+  static final String ACCEPT_ENCODING = "gzip";
+  static final int MAX_RESPONSE_BYTES = 8 * 1024 * 1024;
+  static final int MAX_UPLOAD_RESPONSE_BYTES = 64 * 1024;
+  static final int MAX_ERROR_RESPONSE_BYTES = 64 * 1024;
+
+  private ImaggaResponseParser() {
+  }
+
+  /**
+   * Returns the decoded body of the response, limited to maxBytes.
+   * <p>
+   * Reading beyond the limit fails with an IOException.
+   */
+  static InputStream openBody(HttpResponse<InputStream> response, int maxBytes) throws IOException {
+    InputStream body = response.body();
+    boolean gzipped = response.headers().firstValue("Content-Encoding")
+            .map(ACCEPT_ENCODING::equalsIgnoreCase)
+            .orElse(false);
+    return new BoundedInputStream(gzipped ? new GZIPInputStream(body) : body, maxBytes);
+  }
+
+  /**
+   * Reads the body of an error response into a string, for error messages.
+   * <p>
+   * Never fails, since it is only used to report another failure.
+   */
+  static String readErrorBody(HttpResponse<InputStream> response) {
+    try (InputStream body = openBody(response, MAX_ERROR_RESPONSE_BYTES)) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException | RuntimeException e) {
+      return "";
+    }
+  }
+
+  /**
+   * Parses {"result": {"upload_id": "..."}}.
+   */
+  static String parseUploadId(Reader json) throws IOException {
+    String uploadId = null;
+    try (JsonReader reader = newReader(json)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (RESULT_KEY.equals(reader.nextName())) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            if (UPLOAD_ID_KEY.equals(reader.nextName())) {
+              uploadId = reader.nextString();
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    if (uploadId == null) {
+      throw new JsonParseException("Missing " + UPLOAD_ID_KEY);
+    }
+    return uploadId;
+  }
+
+  /**
+   * Parses {"status": {"text": "..."}}, or returns an empty string if there
+   * is no status text.
+   * <p>
+   * The json must not be empty.
+   */
+  static String parseErrorMessage(Reader json) throws IOException {
+    String text = "";
+    try (JsonReader reader = newReader(json)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (STATUS_KEY.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            if (TEXT_KEY.equals(reader.nextName())) {
+              text = reader.nextString();
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    return text;
+  }
+
+  /**
+   * Parses {"result": {"tags": [{"confidence": 42.0, "tag": {"en": "...", ...}}, ...]}}
+   * into keyword lists per language.
+   * <p>
+   * Every tag must provide the first of the given languages.  A further
+   * given language which a tag lacks is missing from the result, so that
+   * it does not fail the request for the first language.  Languages which
+   * are not given are skipped.  The order of the tags is retained.
+   */
+  static Map<String, KeywordList> parseTags(Reader json, List<String> languages) throws IOException {
+    return parseLabels(json, languages, TAGS_KEY, TAG_KEY);
+  }
+
+  /**
+   * Parses {"result": {"categories": [{"confidence": 42.0, "name": {"en": "...", ...}}, ...]}}
+   * like {@link #parseTags(Reader, List)}.
+   */
+  static Map<String, KeywordList> parseCategories(Reader json, List<String> languages) throws IOException {
+    return parseLabels(json, languages, CATEGORIES_KEY, NAME_KEY);
+  }
+
+  /**
+   * Parses the image colors of
+   * {"result": {"colors": {"image_colors": [{"html_code": "#1a2b3c", "percent": 42.0, ...}, ...], ...}}}.
+   */
+  static List<ImageAnalysis.Color> parseColors(Reader json) throws IOException {
+    List<ImageAnalysis.Color> colors = new ArrayList<>();
+    parseResult(json, (name, reader) -> {
+      if (COLORS_KEY.equals(name)) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (IMAGE_COLORS_KEY.equals(reader.nextName())) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+              colors.add(parseColor(reader));
+            }
+            reader.endArray();
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    });
+    return colors;
+  }
+
+  /**
+   * Parses {"result": {"croppings": [{"x1": 0, "y1": 0, "x2": 99, "y2": 99, ...}, ...]}}.
+   */
+  static List<ImageAnalysis.Cropping> parseCroppings(Reader json) throws IOException {
+    List<ImageAnalysis.Cropping> croppings = new ArrayList<>();
+    parseResult(json, (name, reader) -> {
+      if (CROPPINGS_KEY.equals(name)) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          croppings.add(parseCropping(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    });
+    return croppings;
+  }
+
+  private static Map<String, KeywordList> parseLabels(Reader json, List<String> languages, String arrayKey, String labelKey) throws IOException {
+    List<String[]> labels = new ArrayList<>();
+    List<Double> confidences = new ArrayList<>();
+    parseResult(json, (name, reader) -> {
+      if (arrayKey.equals(name)) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          parseLabel(reader, languages, labelKey, labels, confidences);
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    });
+    return toKeywordLists(languages, labels, confidences);
+  }
+
+  /**
+   * Parses {"result": {...}}, passing the fields of the result to the
+   * field parser and skipping everything else.
+   */
+  private static void parseResult(Reader json, FieldParser resultField) throws IOException {
+    try (JsonReader reader = newReader(json)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (RESULT_KEY.equals(reader.nextName())) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            resultField.parse(reader.nextName(), reader);
+          }
+          reader.endObject();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+  }
+
+  private static Map<String, KeywordList> toKeywordLists(List<String> languages, List<String[]> labels, List<Double> confidences) {
+    float[] confidenceArray = new float[confidences.size()];
+    for (int i = 0; i < confidenceArray.length; i++) {
+      confidenceArray[i] = confidences.get(i).floatValue();
+    }
+    Map<String, KeywordList> result = new LinkedHashMap<>();
+    for (int i = 0; i < languages.size(); i++) {
+      String[] names = names(labels, i);
+      if (names != null) {
+        result.put(languages.get(i), new KeywordList(names, confidenceArray));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The names of the labels in the language with the given index, or null
+   * if a label lacks the language.
+   */
+  @Nullable
+  private static String[] names(List<String[]> labels, int languageIndex) {
+    String[] names = new String[labels.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = labels.get(i)[languageIndex];
+      if (names[i] == null) {
+        return null;
+      }
+    }
+    return names;
+  }
+
+  private static void parseLabel(JsonReader reader, List<String> languages, String labelKey, List<String[]> labels, List<Double> confidences) throws IOException {
+    Double confidence = null;
+    String[] values = new String[languages.size()];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (CONFIDENCE_KEY.equals(name)) {
+        confidence = reader.nextDouble();
+      } else if (labelKey.equals(name)) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          int index = languages.indexOf(reader.nextName());
+          if (index >= 0) {
+            values[index] = reader.nextString();
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (confidence == null) {
+      throw new JsonParseException("Missing " + CONFIDENCE_KEY);
+    }
+    if (!languages.isEmpty()) {
+      requireValue(values[0], languages.get(0));
+    }
+    labels.add(values);
+    confidences.add(confidence);
+  }
+
+  private static ImageAnalysis.Color parseColor(JsonReader reader) throws IOException {
+    String htmlCode = null;
+    Double percent = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (HTML_CODE_KEY.equals(name)) {
+        htmlCode = reader.nextString();
+      } else if (PERCENT_KEY.equals(name)) {
+        percent = reader.nextDouble();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (htmlCode == null || percent == null) {
+      throw new JsonParseException("Missing " + HTML_CODE_KEY + " or " + PERCENT_KEY);
+    }
+    return new ImageAnalysis.Color(htmlCode, percent);
+  }
+
+  private static ImageAnalysis.Cropping parseCropping(JsonReader reader) throws IOException {
+    int[] coordinates = {-1, -1, -1, -1};
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int index = CROPPING_KEYS.indexOf(reader.nextName());
+      if (index >= 0) {
+        coordinates[index] = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    for (int i = 0; i < coordinates.length; i++) {
+      if (coordinates[i] < 0) {
+        throw new JsonParseException("Missing " + CROPPING_KEYS.get(i));
+      }
+    }
+    return new ImageAnalysis.Cropping(coordinates[0], coordinates[1], coordinates[2], coordinates[3]);
+  }
+
+  private static void requireValue(@Nullable String value, String language) {
+    if (value == null) {
+      throw new JsonParseException("Missing tag for language " + language);
+    }
+  }
+
+  /**
+   * Releases the connection of a response that is not passed on.
+   */
+  static void discard(HttpResponse<?> response) {
+    Object body = response.body();
+    if (body instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) body).close();
+      } catch (Exception e) {
+        // The response is not used anyway.
+      }
+    }
+  }
+
+  static Reader asReader(InputStream inputStream) {
+    return new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+  }
+
+  // Imagga responses are proper JSON, but be tolerant like the former
+  // JsonParser, which was lenient.
+  private static JsonReader newReader(Reader json) {
+    JsonReader reader = new JsonReader(json);
+    reader.setLenient(true);
+    return reader;
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private interface FieldParser {
+    /**
+     * Parses the value of the field, or skips it.
+     */
+    void parse(String name, JsonReader reader) throws IOException;
+  }
+
+  private static class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long maxBytes) {
+      super(in);
+      remaining = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        consume(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        consume(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      consume(skipped);
+      return skipped;
+    }
+
+    private void consume(long n) throws IOException {
+      remaining -= n;
+      if (remaining < 0) {
+        throw new IOException("Response body exceeds the size limit");
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.CacheKey;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Coalesces concurrent computations of the same cache key.
+ * <p>
+ * The Imagga values are injected into the cache only after the response
+ * has arrived.  Without coalescing, every request that runs into the cache
+ * miss in the meantime would issue its own round trip.  With coalescing,
+ * the first request computes the value, and all followers attach to its
+ * future.
+ * <p>
+ * Instances are shared by all adapters of a factory, because the cache keys
+ * already distinguish the relevant settings.
+ * <p>
+ * Each caller gets its own copy of the shared future.  If all callers have
+ * cancelled their copies, nobody waits for the result anymore, and the
+ * computation is cancelled, too.
+ */
+@DefaultAnnotation(NonNull.class)
+class InFlightRequests {
+  private final Map<CacheKey<?>, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the running computation for the given key, or starts a new one.
+   * <p>
+   * The computation is expected to inject its result into the cache before
+   * it completes, so that there is no gap between the end of the in-flight
+   * phase and the availability in the cache.
+   */
+  <T> CompletableFuture<T> join(CacheKey<T> cacheKey, Supplier<? extends CompletionStage<T>> computation) {
+    while (true) {
+      InFlight<T> entry = new InFlight<>(cacheKey);
+      @SuppressWarnings("unchecked")
+      InFlight<T> running = (InFlight<T>) inFlight.putIfAbsent(cacheKey, entry);
+      if (running != null) {
+        CompletableFuture<T> follower = running.attach();
+        if (follower != null) {
+          return follower;
+        }
+        // abandoned meanwhile, start over
+        inFlight.remove(cacheKey, running);
+        continue;
+      }
+      CompletableFuture<T> leader = requireNonNull(entry.attach());
+      try {
+        entry.start(computation.get().toCompletableFuture());
+      } catch (RuntimeException e) {
+        inFlight.remove(cacheKey, entry);
+        entry.promise.completeExceptionally(e);
+      }
+      return leader;
+    }
+  }
+
+  /**
+   * The number of running computations.
+   */
+  int size() {
+    return inFlight.size();
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private class InFlight<T> {
+    private final CacheKey<T> cacheKey;
+    private final CompletableFuture<T> promise = new CompletableFuture<>();
+    // guarded by this
+    @Nullable
+    private CompletableFuture<T> computation;
+    private int waiters;
+    private boolean abandoned;
+
+    InFlight(CacheKey<T> cacheKey) {
+      this.cacheKey = cacheKey;
+    }
+
+    /**
+     * A copy of the shared future for a further caller, or null if the
+     * computation has been abandoned.
+     */
+    @Nullable
+    synchronized CompletableFuture<T> attach() {
+      if (abandoned) {
+        return null;
+      }
+      waiters++;
+      // Callers get a copy, so that they cannot complete or cancel the
+      // shared computation.
+      CompletableFuture<T> copy = promise.copy();
+      copy.whenComplete((value, throwable) -> {
+        if (copy.isCancelled()) {
+          detach();
+        }
+      });
+      return copy;
+    }
+
+    void start(CompletableFuture<T> work) {
+      synchronized (this) {
+        computation = work;
+      }
+      work.whenComplete((value, throwable) -> {
+        inFlight.remove(cacheKey, this);
+        if (throwable != null) {
+          promise.completeExceptionally(throwable);
+        } else {
+          promise.complete(value);
+        }
+      });
+    }
+
+    private void detach() {
+      CompletableFuture<T> work;
+      synchronized (this) {
+        waiters--;
+        if (waiters > 0 || promise.isDone()) {
+          return;
+        }
+        abandoned = true;
+        work = computation;
+      }
+      inFlight.remove(cacheKey, this);
+      promise.cancel(false);
+      if (work != null) {
+        work.cancel(true);
+      }
+    }
+  }
+}
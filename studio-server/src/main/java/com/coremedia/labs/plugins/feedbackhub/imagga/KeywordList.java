@@ -0,0 +1,201 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tags of an image in one language, ordered as returned by Imagga.
+ * <p>
+ * This is the adapter's internal representation of a tags result, and the
+ * value of the cache entries.  It is materialized into {@link Keyword}s
+ * only for the Feedback Hub API.
+ * <p>
+ * Since the cache holds the tags of many pictures, the representation is
+ * compact: the names are IDs of the {@link TagDictionary}, and the
+ * confidences are floats, which are more precise than Imagga's
+ * confidences anyway.
+ */
+@DefaultAnnotation(NonNull.class)
+final class KeywordList {
+  static final KeywordList EMPTY = new KeywordList(new String[0], new double[0]);
+
+  private static final int ARRAY_HEADER_SIZE = 16;
+  private static final int STRING_HEADER_SIZE = 40;
+
+  private final int[] ids;
+  // the names, if the dictionary was full
+  @Nullable
+  private final String[] names;
+  private final float[] confidences;
+
+  KeywordList(String[] names, double[] confidences) {
+    this(names, toFloats(confidences));
+  }
+
+  /**
+   * @param confidences the confidences, which may be shared by the lists of several languages
+   */
+  KeywordList(String[] names, float[] confidences) {
+    if (names.length != confidences.length) {
+      throw new IllegalArgumentException("names and confidences differ in length");
+    }
+    int[] internedIds = new int[names.length];
+    boolean interned = true;
+    for (int i = 0; i < names.length && interned; i++) {
+      internedIds[i] = TagDictionary.SHARED.intern(names[i]);
+      interned = internedIds[i] != TagDictionary.NOT_INTERNED;
+    }
+    this.ids = interned ? internedIds : new int[0];
+    this.names = interned ? null : names.clone();
+    this.confidences = confidences;
+  }
+
+  private KeywordList(int[] ids, @Nullable String[] names, float[] confidences) {
+    this.ids = ids;
+    this.names = names;
+    this.confidences = confidences;
+  }
+
+  int size() {
+    return confidences.length;
+  }
+
+  String getName(int index) {
+    return names != null ? names[index] : TagDictionary.SHARED.getName(ids[index]);
+  }
+
+  double getConfidence(int index) {
+    return confidences[index];
+  }
+
+  /**
+   * The leading keywords with a confidence of at least minAccuracy, but no
+   * more than limit.
+   * <p>
+   * The list must be sorted by descending confidence.
+   *
+   * @param limit the maximum number of keywords, negative for no limit
+   */
+  KeywordList head(int limit, double minAccuracy) {
+    int max = limit < 0 ? size() : Math.min(limit, size());
+    int size = 0;
+    while (size < max && confidences[size] >= minAccuracy) {
+      size++;
+    }
+    if (size == size()) {
+      return this;
+    }
+    return new KeywordList(names != null ? ids : Arrays.copyOf(ids, size),
+            names != null ? Arrays.copyOf(names, size) : null,
+            Arrays.copyOf(confidences, size));
+  }
+
+  /**
+   * This list, sorted by descending confidence.
+   * <p>
+   * Keywords with equal confidence retain their order.
+   */
+  KeywordList sortedByConfidence() {
+    int i = 1;
+    while (i < confidences.length && confidences[i - 1] >= confidences[i]) {
+      i++;
+    }
+    if (i >= confidences.length) {
+      return this;
+    }
+    Integer[] order = new Integer[confidences.length];
+    for (int j = 0; j < order.length; j++) {
+      order[j] = j;
+    }
+    Arrays.sort(order, (a, b) -> Float.compare(confidences[b], confidences[a]));
+    int[] sortedIds = names != null ? ids : new int[order.length];
+    String[] sortedNames = names != null ? new String[order.length] : null;
+    float[] sortedConfidences = new float[order.length];
+    for (int j = 0; j < order.length; j++) {
+      if (sortedNames != null) {
+        sortedNames[j] = names[order[j]];
+      } else {
+        sortedIds[j] = ids[order[j]];
+      }
+      sortedConfidences[j] = confidences[order[j]];
+    }
+    return new KeywordList(sortedIds, sortedNames, sortedConfidences);
+  }
+
+  /**
+   * The estimated retained size of this list in bytes.
+   * <p>
+   * The confidences are counted, though they may be shared with the lists
+   * of other languages.  The interned names are not counted.
+   */
+  int estimatedSize() {
+    int size = 3 * ARRAY_HEADER_SIZE + 4 * ids.length + 4 * confidences.length;
+    if (names != null) {
+      for (String name : names) {
+        size += STRING_HEADER_SIZE + 2 * name.length();
+      }
+    }
+    return size;
+  }
+
+  List<Keyword> toKeywords() {
+    List<Keyword> result = new ArrayList<>(size());
+    for (int i = 0; i < size(); i++) {
+      result.add(new Keyword(getName(i), confidences[i]));
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    KeywordList that = (KeywordList) o;
+    if (!Arrays.equals(confidences, that.confidences)) {
+      return false;
+    }
+    if (names == null && that.names == null) {
+      return Arrays.equals(ids, that.ids);
+    }
+    for (int i = 0; i < size(); i++) {
+      if (!getName(i).equals(that.getName(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Arrays.hashCode(confidences);
+    for (int i = 0; i < size(); i++) {
+      result = 31 * result + getName(i).hashCode();
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    String[] result = new String[size()];
+    Arrays.setAll(result, this::getName);
+    return KeywordList.class.getSimpleName() + Arrays.toString(result);
+  }
+
+  private static float[] toFloats(double[] values) {
+    float[] result = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = (float) values[i];
+    }
+    return result;
+  }
+}
@@ -0,0 +1,377 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.google.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent keyword store, which survives Studio restarts.
+ * <p>
+ * The keywords are appended to a single segment file.  Each record consists
+ * of its length, the store key and the keyword list.  The index from keys to
+ * record offsets is kept in memory.  It is built by scanning the segment
+ * file in the background when the store is created, so that the Studio
+ * startup is not delayed.  Until the index is loaded, lookups are misses and
+ * writes are deferred.  Loading and writing are done by a single dedicated
+ * thread, never by the threads which process the Imagga responses.
+ * <p>
+ * If a key is written again, the new record shadows the old one.  A
+ * truncated record at the end of the file, e.g. after a crash, is cut off
+ * when the index is loaded.  If the segment file reaches its maximum size,
+ * it is compacted, i.e. rewritten without the shadowed records.  If it is
+ * still full then, further writes are dropped.
+ */
+@DefaultAnnotation(NonNull.class)
+class KeywordStore {
+  private static final Logger LOG = LoggerFactory.getLogger(KeywordStore.class);
+
+  private static final String SEGMENT_FILE_NAME = "imagga-keywords.seg";
+  private static final int MAGIC = 0x494d4b31; // "IMK1"
+  private static final int HEADER_LENGTH = Integer.BYTES;
+  private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  private final Path segmentFile;
+  private final long maxBytes;
+  private final Map<String, Long> index = new ConcurrentHashMap<>();
+  private final ExecutorService writer;
+  private final CompletableFuture<Void> loaded;
+  private final Object writeLock = new Object();
+
+  @Nullable
+  private volatile FileChannel channel;
+
+  // The size of the records which are shadowed by newer ones, i.e. the size
+  // which a compaction would free.
+  private long shadowedBytes;
+  private boolean full;
+
+  KeywordStore(Path directory, long maxBytes) {
+    this.segmentFile = directory.resolve(SEGMENT_FILE_NAME);
+    this.maxBytes = maxBytes;
+    writer = ImaggaExecutors.daemonPool(1, "imagga-keyword-store");
+    loaded = CompletableFuture.runAsync(this::load, writer);
+  }
+
+  /**
+   * Returns the stored keywords, or null if there are none or the store is
+   * not yet loaded.
+   */
+  @Nullable
+  KeywordList find(Key key) {
+    if (!loaded.isDone() || loaded.isCompletedExceptionally()) {
+      return null;
+    }
+    Long offset = index.get(key.asString());
+    if (offset == null) {
+      return null;
+    }
+    try {
+      return read(offset, key.asString());
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Cannot read keywords for {} from {}", key, segmentFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the keywords asynchronously.
+   *
+   * @return a future which completes when the keywords are written, or
+   * dropped
+   */
+  CompletableFuture<Void> store(Key key, KeywordList keywords) {
+    try {
+      return loaded.thenRunAsync(() -> {
+        try {
+          append(key.asString(), keywords);
+        } catch (IOException | RuntimeException e) {
+          LOG.warn("Cannot store keywords for {} in {}", key, segmentFile, e);
+        }
+      }, writer);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Keyword store {} is closed, dropping keywords for {}", segmentFile, key);
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  @VisibleForTesting
+  CompletableFuture<Void> getLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Writes the pending keywords and closes the segment file.
+   */
+  void close() {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("Keyword store {} did not write all pending keywords in time", segmentFile);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    closeChannel();
+  }
+
+  private void closeChannel() {
+    synchronized (writeLock) {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          LOG.debug("Cannot close {}", segmentFile, e);
+        }
+        channel = null;
+      }
+    }
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private void load() {
+    synchronized (writeLock) {
+      try {
+        Files.createDirectories(segmentFile.getParent());
+        channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+          channel.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(0, MAGIC), 0);
+        } else {
+          ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+          readFully(channel, header, 0);
+          if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a keyword segment file: " + segmentFile);
+          }
+        }
+        long position = scan(channel);
+        if (position < channel.size()) {
+          LOG.warn("Cutting off truncated record at {} of {}", position, segmentFile);
+          channel.truncate(position);
+        }
+        LOG.info("Loaded {} keyword lists from {}", index.size(), segmentFile);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Cannot load keyword store {}, it is disabled.", segmentFile, e);
+        closeChannel();
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Builds the index and returns the end of the last complete record.
+   */
+  private long scan(FileChannel fileChannel) throws IOException {
+    long position = HEADER_LENGTH;
+    long size = fileChannel.size();
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+    while (position + Integer.BYTES <= size) {
+      lengthBuffer.clear();
+      readFully(fileChannel, lengthBuffer, position);
+      int length = lengthBuffer.getInt(0);
+      if (length <= 0 || length > MAX_RECORD_LENGTH || position + Integer.BYTES + length > size) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(length);
+      readFully(fileChannel, record, position + Integer.BYTES);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+      Long shadowed = index.put(in.readUTF(), position);
+      if (shadowed != null) {
+        shadowedBytes += recordLength(fileChannel, shadowed);
+      }
+      position += Integer.BYTES + length;
+    }
+    return position;
+  }
+
+  @Nullable
+  private KeywordList read(long offset, String expectedKey) throws IOException {
+    FileChannel fileChannel = channel;
+    if (fileChannel == null) {
+      return null;
+    }
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+    readFully(fileChannel, lengthBuffer, offset);
+    ByteBuffer record = ByteBuffer.allocate(lengthBuffer.getInt(0));
+    readFully(fileChannel, record, offset + Integer.BYTES);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+    if (!expectedKey.equals(in.readUTF())) {
+      throw new IOException("Index mismatch at offset " + offset);
+    }
+    int size = in.readInt();
+    String[] names = new String[size];
+    double[] confidences = new double[size];
+    for (int i = 0; i < size; i++) {
+      names[i] = in.readUTF();
+      confidences[i] = in.readDouble();
+    }
+    return new KeywordList(names, confidences);
+  }
+
+  private static long recordLength(FileChannel fileChannel, long offset) throws IOException {
+    ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+    readFully(fileChannel, lengthBuffer, offset);
+    return Integer.BYTES + (long) lengthBuffer.getInt(0);
+  }
+
+  private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+  }
+
+  private void append(String key, KeywordList keywords) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0); // placeholder for the length
+    out.writeUTF(key);
+    out.writeInt(keywords.size());
+    for (int i = 0; i < keywords.size(); i++) {
+      out.writeUTF(keywords.getName(i));
+      out.writeDouble(keywords.getConfidence(i));
+    }
+    out.flush();
+    ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+    record.putInt(0, record.remaining() - Integer.BYTES);
+
+    synchronized (writeLock) {
+      if (channel == null) {
+        return;
+      }
+      long position = channel.size();
+      if (position + record.remaining() > maxBytes && shadowedBytes > 0) {
+        compact();
+        position = channel.size();
+      }
+      if (position + record.remaining() > maxBytes) {
+        if (!full) {
+          full = true;
+          LOG.warn("Keyword store {} has reached its maximum size of {} bytes, new keywords are not stored anymore", segmentFile, maxBytes);
+        }
+        LOG.debug("Keyword store {} is full, dropping keywords for {}", segmentFile, key);
+        return;
+      }
+      while (record.hasRemaining()) {
+        channel.write(record, position + record.position());
+      }
+      Long shadowed = index.put(key, position);
+      if (shadowed != null) {
+        shadowedBytes += recordLength(channel, shadowed);
+      }
+    }
+  }
+
+  /**
+   * Rewrites the segment file without the shadowed records.
+   */
+  private void compact() throws IOException {
+    FileChannel source = Objects.requireNonNull(channel);
+    Path compacted = segmentFile.resolveSibling(SEGMENT_FILE_NAME + ".compact");
+    Map<String, Long> compactedIndex = new HashMap<>();
+    try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      target.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(0, MAGIC));
+      for (Map.Entry<String, Long> entry : index.entrySet()) {
+        long offset = entry.getValue();
+        long length = recordLength(source, offset);
+        compactedIndex.put(entry.getKey(), target.position());
+        for (long transferred = 0; transferred < length; ) {
+          transferred += source.transferTo(offset + transferred, length - transferred, target);
+        }
+      }
+      target.force(false);
+    }
+    long before = source.size();
+    source.close();
+    try {
+      Files.move(compacted, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      index.putAll(compactedIndex);
+      shadowedBytes = 0;
+      full = false;
+    } finally {
+      channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    LOG.info("Compacted keyword store {} from {} to {} bytes", segmentFile, before, channel.size());
+  }
+
+
+  // --- keys -------------------------------------------------------
+
+  /**
+   * Identifies a keyword list by content identity, language and the
+   * query parameters.
+   * <p>
+   * Unlike the tags cache key, the store key does not contain the upload ID,
+   * because upload IDs expire after a day.
+   */
+  static final class Key {
+    private final String contentId;
+    private final String url;
+    private final String language;
+    private final int limit;
+    private final int minAccuracy;
+
+    Key(String contentId, String url, String language, int limit, int minAccuracy) {
+      this.contentId = contentId;
+      this.url = url;
+      this.language = language;
+      this.limit = limit;
+      this.minAccuracy = minAccuracy;
+    }
+
+    String asString() {
+      return contentId + '|' + url + '|' + language + '|' + limit + '|' + minAccuracy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key that = (Key) o;
+      return limit == that.limit &&
+              minAccuracy == that.minAccuracy &&
+              contentId.equals(that.contentId) &&
+              url.equals(that.url) &&
+              language.equals(that.language);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(contentId, url, language, limit, minAccuracy);
+    }
+
+    @Override
+    public String toString() {
+      return asString();
+    }
+  }
+}
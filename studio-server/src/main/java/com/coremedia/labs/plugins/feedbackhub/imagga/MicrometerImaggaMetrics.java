@@ -0,0 +1,120 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.CacheKey;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer implementation of {@link ImaggaMetrics}.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>imagga.request: timer of the requests, by phase and status.  The
+ *       status is the HTTP status code, or the exception for failed
+ *       requests.  The time includes the wait for the rate limit.</li>
+ *   <li>imagga.parse: timer of the response parsing, by phase</li>
+ *   <li>imagga.cache.lookups: counter of cache lookups, by key type and
+ *       result (hit or miss)</li>
+ *   <li>imagga.upload.size: distribution of the uploaded bytes</li>
+ *   <li>imagga.response.size: distribution of the response bytes, by phase</li>
+ *   <li>imagga.requests.active: gauge of the running requests</li>
+ *   <li>imagga.requests.coalesced: gauge of the running computations that
+ *       concurrent editor requests share</li>
+ * </ul>
+ */
+@DefaultAnnotation(NonNull.class)
+class MicrometerImaggaMetrics implements ImaggaMetrics {
+  private static final String PREFIX = "imagga.";
+
+  private final MeterRegistry registry;
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private final DistributionSummary uploadSize;
+
+  MicrometerImaggaMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    Gauge.builder(PREFIX + "requests.active", activeRequests, AtomicInteger::get)
+            .description("Running requests to Imagga")
+            .register(registry);
+    uploadSize = DistributionSummary.builder(PREFIX + "upload.size")
+            .baseUnit("bytes")
+            .description("Size of the uploaded pictures")
+            .register(registry);
+  }
+
+  @Override
+  public long requestStarted() {
+    activeRequests.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  @Override
+  public void requestFinished(String phase, long start, @Nullable HttpResponse<?> response, @Nullable Throwable throwable) {
+    long duration = System.nanoTime() - start;
+    activeRequests.decrementAndGet();
+    Timer.builder(PREFIX + "request")
+            .tag("phase", phase)
+            .tag("status", response != null ? String.valueOf(response.statusCode()) : exceptionName(throwable))
+            .register(registry)
+            .record(duration, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public long parseStarted() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public void parseFinished(String phase, long start) {
+    Timer.builder(PREFIX + "parse")
+            .tag("phase", phase)
+            .register(registry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void cacheLookup(CacheKey<?> cacheKey, boolean hit) {
+    Counter.builder(PREFIX + "cache.lookups")
+            .tag("key", cacheKey.getClass().getSimpleName())
+            .tag("result", hit ? "hit" : "miss")
+            .register(registry)
+            .increment();
+  }
+
+  @Override
+  public void uploadBytes(long bytes) {
+    uploadSize.record(bytes);
+  }
+
+  @Override
+  public InputStream countResponseBytes(String phase, InputStream body) {
+    DistributionSummary responseSize = DistributionSummary.builder(PREFIX + "response.size")
+            .tag("phase", phase)
+            .baseUnit("bytes")
+            .register(registry);
+    return new ReportingInputStream(body, responseSize::record);
+  }
+
+  @Override
+  public void monitor(InFlightRequests inFlightRequests) {
+    Gauge.builder(PREFIX + "requests.coalesced", inFlightRequests, InFlightRequests::size)
+            .description("Running Imagga computations shared by concurrent requests")
+            .register(registry);
+  }
+
+  private static String exceptionName(@Nullable Throwable throwable) {
+    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    return cause != null ? cause.getClass().getSimpleName() : "none";
+  }
+}
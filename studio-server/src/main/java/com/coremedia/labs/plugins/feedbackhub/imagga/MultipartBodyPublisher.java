@@ -0,0 +1,126 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * A multipart body with a single image part.
+ * <p>
+ * A multipart request should have the following structure:
+ *
+ ** Content-Type: multipart/form-data; boundary=ImageUpload
+ *
+ *+ --ImageUpload
+ ** Content-Disposition: form-data; name="image"
+ ** <…file content…>
+ *
+ *  ImageUpload--
+ * <p>
+ * The body is repeatable: Each subscription opens a new content stream, so
+ * that the HttpClient can resend the body on redirects, and the adapter can
+ * resend it on retries.  If the length of the content is known, the body
+ * reports its exact length, so that the request is not sent chunked.
+ * <p>
+ * If the request is abandoned, {@link #abort()} stops the streaming at the
+ * next chunk, and closes the content stream.
+ * <p>
+ * Impl note: The content is streamed by the JDK's input stream publisher in
+ * fixed-size chunks.  The chunks are not pooled, because the HttpClient
+ * takes over the emitted buffers and does not tell when it is done with
+ * them.
+ */
+@DefaultAnnotation(NonNull.class)
+class MultipartBodyPublisher implements HttpRequest.BodyPublisher {
+  private static final String BOUNDARY = "ImageUpload";
+  private static final String CRLF = "\r\n";
+  private static final String TWO_HYPHENS = "--";
+
+  private final byte[] prefix;
+  private final byte[] suffix;
+  private final Supplier<InputStream> content;
+  private final long contentLength;
+  private volatile boolean aborted;
+
+  private MultipartBodyPublisher(String fileName, Supplier<InputStream> content, long contentLength) {
+    String parameters = ("Content-Disposition: form-data; name=\"image\";filename=\"" + fileName + "\"" + CRLF);
+    this.prefix = (TWO_HYPHENS + BOUNDARY + CRLF + parameters + CRLF).getBytes();
+    this.suffix = (CRLF + CRLF + BOUNDARY + TWO_HYPHENS).getBytes();
+    this.content = content;
+    this.contentLength = contentLength < 0 ? -1 : prefix.length + contentLength + suffix.length;
+  }
+
+  /**
+   * A body for in-memory content, with known length.
+   */
+  static MultipartBodyPublisher ofByteArray(String fileName, byte[] data) {
+    return new MultipartBodyPublisher(fileName, () -> new ByteArrayInputStream(data), data.length);
+  }
+
+  /**
+   * A body for streamed content of unknown length.
+   * <p>
+   * The supplier is invoked for each subscription and must return a new
+   * stream each time.
+   */
+  static MultipartBodyPublisher ofInputStream(String fileName, Supplier<InputStream> content) {
+    return new MultipartBodyPublisher(fileName, content, -1);
+  }
+
+  static String getContentType() {
+    return "multipart/form-data;boundary=" + BOUNDARY;
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    HttpRequest.BodyPublishers.ofInputStream(this::open).subscribe(subscriber);
+  }
+
+  /**
+   * Fails the streaming of the body, so that the request ends and the
+   * content stream is closed.
+   */
+  void abort() {
+    aborted = true;
+  }
+
+  private InputStream open() {
+    List<InputStream> parts = List.of(new ByteArrayInputStream(prefix), content.get(), new ByteArrayInputStream(suffix));
+    return new FilterInputStream(new SequenceInputStream(Collections.enumeration(parts))) {
+      @Override
+      public int read() throws IOException {
+        checkAborted();
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        checkAborted();
+        return super.read(b, off, len);
+      }
+
+      private void checkAborted() throws IOException {
+        if (aborted) {
+          close();
+          throw new IOException("The request has been cancelled");
+        }
+      }
+    };
+  }
+}
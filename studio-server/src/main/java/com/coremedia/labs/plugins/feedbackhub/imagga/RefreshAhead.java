@@ -0,0 +1,150 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Refreshes popular cache entries before they expire.
+ * <p>
+ * The cache does not tell when an entry expires, so the adapter reports
+ * the cached entries with their time to live.  If an entry is hit within
+ * the refresh window before its expiry, and it has been hit before, it is
+ * refreshed in the background.  So popular pictures never see a cold
+ * miss, while entries which are not used anymore expire as usual and
+ * cost no Imagga requests.
+ * <p>
+ * Refreshes are started with a random delay on a low-priority thread, so
+ * that entries which were cached together are not refreshed in a burst.
+ * The requests themselves are subject to the same limits as the editors'
+ * requests.
+ * <p>
+ * Only the most recently used entries are tracked, so the bookkeeping has
+ * a bounded size.
+ */
+@DefaultAnnotation(NonNull.class)
+class RefreshAhead {
+  private static final Logger LOG = LoggerFactory.getLogger(RefreshAhead.class);
+
+  static final int MIN_HITS = 2;
+  private static final int MAX_ENTRIES = 10_000;
+
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "imagga-refresh-ahead");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  private final long windowNanos;
+
+  // guarded by this
+  private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  /**
+   * @param window the time before the expiry in which hit entries are refreshed, 0 to disable refresh-ahead
+   */
+  RefreshAhead(Duration window) {
+    this.windowNanos = window.toNanos();
+  }
+
+  boolean isEnabled() {
+    return windowNanos > 0;
+  }
+
+  /**
+   * Reports a cached entry.
+   */
+  void cached(Object cacheKey, Duration timeToLive) {
+    if (!isEnabled()) {
+      return;
+    }
+    synchronized (this) {
+      entries.put(cacheKey, new Entry(System.nanoTime() + timeToLive.toNanos()));
+    }
+  }
+
+  /**
+   * Reports a hit of an entry, and starts the refresh if the entry is
+   * popular and about to expire.
+   *
+   * @param refresh computes the entry anew and caches it
+   * @return whether a refresh has been scheduled
+   */
+  boolean hit(Object cacheKey, Supplier<CompletionStage<?>> refresh) {
+    if (!isEnabled()) {
+      return false;
+    }
+    Entry entry;
+    long remaining;
+    synchronized (this) {
+      entry = entries.get(cacheKey);
+      if (entry == null || entry.refreshing) {
+        return false;
+      }
+      entry.hits++;
+      remaining = entry.expiresAt - System.nanoTime();
+      if (entry.hits < MIN_HITS || remaining > windowNanos || remaining <= 0) {
+        return false;
+      }
+      entry.refreshing = true;
+    }
+    long delay = ThreadLocalRandom.current().nextLong(Math.max(1, remaining / 4));
+    SCHEDULER.schedule(() -> refresh(cacheKey, entry, refresh), delay, TimeUnit.NANOSECONDS);
+    return true;
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private void refresh(Object cacheKey, Entry entry, Supplier<CompletionStage<?>> refresh) {
+    LOG.debug("Refreshing {} ahead of its expiry", cacheKey.getClass().getSimpleName());
+    CompletionStage<?> result;
+    try {
+      result = refresh.get();
+    } catch (RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    result.whenComplete((ignored, throwable) -> {
+      if (throwable != null) {
+        LOG.debug("Refresh of {} failed, it will expire as usual", cacheKey.getClass().getSimpleName(), throwable);
+        // Let a later hit try again.  On success, the entry has been
+        // replaced by the refreshed one.
+        synchronized (this) {
+          entry.refreshing = false;
+        }
+      }
+    });
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private static class Entry {
+    private final long expiresAt;
+    // guarded by the RefreshAhead
+    private int hits;
+    private boolean refreshing;
+
+    Entry(long expiresAt) {
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Reports the number of bytes read when the stream is closed.
+ */
+@DefaultAnnotation(NonNull.class)
+class ReportingInputStream extends FilterInputStream {
+  private final LongConsumer report;
+  private long count;
+  private boolean reported;
+
+  ReportingInputStream(InputStream in, LongConsumer report) {
+    super(in);
+    this.report = report;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int result = super.read();
+    if (result != -1) {
+      count++;
+    }
+    return result;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int result = super.read(b, off, len);
+    if (result > 0) {
+      count += result;
+    }
+    return result;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long result = super.skip(n);
+    count += result;
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!reported) {
+      reported = true;
+      report.accept(count);
+    }
+    super.close();
+  }
+}
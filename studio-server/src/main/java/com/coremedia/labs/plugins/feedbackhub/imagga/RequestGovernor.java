@@ -0,0 +1,294 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the requests to Imagga within the limits of the Imagga plan.
+ * <p>
+ * Requests are admitted by a token bucket, which allows the configured
+ * number of requests per second, and by a cap of concurrently running
+ * requests.  Requests that cannot be admitted immediately wait in a bounded
+ * queue, in the order of their arrival.  If the queue is full, the request
+ * fails right away, rather than letting the editor wait indefinitely.
+ * <p>
+ * If Imagga rejects a request with status 429, the governor stops
+ * admitting requests for the time given by the Retry-After header, and
+ * queues the rejected request again.  So the throughput stays at the plan
+ * limit, rather than alternating between bursts and rejections.
+ * <p>
+ * Instances are shared by all adapters with the same URL and key, because
+ * the plan limits apply to the key.
+ */
+@DefaultAnnotation(NonNull.class)
+class RequestGovernor {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestGovernor.class);
+
+  static final int TOO_MANY_REQUESTS = 429;
+  private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+  private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+  private static final int MAX_REJECTIONS = 3;
+
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "imagga-request-governor");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // 0 means unlimited
+  private final int requestsPerSecond;
+  private final int maxConcurrentRequests;
+  private final int maxQueuedRequests;
+
+  // guarded by this
+  private final Deque<PendingRequest<?>> queue = new ArrayDeque<>();
+  private double tokens;
+  private long lastRefill = System.nanoTime();
+  private long blockedUntil = lastRefill;
+  private int running;
+  private boolean wakeUpScheduled;
+
+  /**
+   * @param requestsPerSecond the rate limit, 0 for unlimited
+   * @param maxConcurrentRequests the concurrency limit, 0 for unlimited
+   * @param maxQueuedRequests the maximum number of waiting requests
+   */
+  RequestGovernor(int requestsPerSecond, int maxConcurrentRequests, int maxQueuedRequests) {
+    this.requestsPerSecond = Math.max(0, requestsPerSecond);
+    this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+    this.maxQueuedRequests = Math.max(0, maxQueuedRequests);
+    // Allow a burst of one second's worth of requests after idle times.
+    tokens = this.requestsPerSecond;
+  }
+
+  /**
+   * Whether the governor enforces the given limits.
+   */
+  boolean hasLimits(int requestsPerSecond, int maxConcurrentRequests, int maxQueuedRequests) {
+    return this.requestsPerSecond == Math.max(0, requestsPerSecond) &&
+            this.maxConcurrentRequests == Math.max(0, maxConcurrentRequests) &&
+            this.maxQueuedRequests == Math.max(0, maxQueuedRequests);
+  }
+
+  /**
+   * Sends the request as soon as the limits permit.
+   * <p>
+   * Fails with a {@link FeedbackHubException} if the wait queue is full.
+   */
+  <T> CompletableFuture<HttpResponse<T>> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+    PendingRequest<T> pending = new PendingRequest<>(client, request, bodyHandler);
+    synchronized (this) {
+      if (queue.size() >= maxQueuedRequests && !canRunNow()) {
+        return CompletableFuture.failedFuture(new FeedbackHubException(
+                "Too many pending requests to " + request.uri().getHost() + ", rejecting " + request.uri(),
+                ImaggaFeedbackHubErrorCode.TOO_MANY_REQUESTS, null));
+      }
+      queue.addLast(pending);
+    }
+    dispatch();
+    return pending.result;
+  }
+
+  synchronized int getQueueLength() {
+    return queue.size();
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private void dispatch() {
+    while (true) {
+      PendingRequest<?> next;
+      synchronized (this) {
+        if (queue.isEmpty() || !canRunNow()) {
+          scheduleWakeUpIfNecessary();
+          return;
+        }
+        next = queue.pollFirst();
+        if (next.result.isDone()) {
+          // cancelled while waiting
+          continue;
+        }
+        if (requestsPerSecond > 0) {
+          tokens -= 1;
+        }
+        running++;
+      }
+      start(next);
+    }
+  }
+
+  private <T> void start(PendingRequest<T> pending) {
+    CompletableFuture<HttpResponse<T>> response;
+    try {
+      response = pending.client.sendAsync(pending.request, pending.bodyHandler);
+    } catch (RuntimeException e) {
+      response = CompletableFuture.failedFuture(e);
+    }
+    // Abort the exchange if the caller loses interest.
+    CompletableFuture<HttpResponse<T>> exchange = response;
+    pending.result.whenComplete((httpResponse, throwable) -> {
+      if (pending.result.isCancelled()) {
+        exchange.cancel(true);
+      }
+    });
+    response.whenComplete((httpResponse, throwable) -> {
+      boolean requeued = false;
+      if (httpResponse != null && httpResponse.statusCode() == TOO_MANY_REQUESTS) {
+        Duration retryAfter = getRetryAfter(httpResponse);
+        LOG.debug("Imagga rejected {} with status 429, pausing for {}", pending.request.uri(), retryAfter);
+        requeued = pause(pending, retryAfter);
+        if (requeued) {
+          ImaggaResponseParser.discard(httpResponse);
+        }
+      }
+      synchronized (this) {
+        running--;
+      }
+      if (!requeued) {
+        if (throwable != null) {
+          pending.result.completeExceptionally(throwable);
+        } else if (!pending.result.complete(httpResponse)) {
+          // cancelled meanwhile
+          ImaggaResponseParser.discard(httpResponse);
+        }
+      }
+      dispatch();
+    });
+  }
+
+  /**
+   * Stops admitting requests for the given time and queues the rejected
+   * request again, unless it has been rejected too often.
+   */
+  private synchronized boolean pause(PendingRequest<?> pending, Duration retryAfter) {
+    long until = System.nanoTime() + retryAfter.toNanos();
+    if (until - blockedUntil > 0) {
+      blockedUntil = until;
+    }
+    tokens = 0;
+    // Refill from the end of the pause only, so that there is no burst
+    // right after it.
+    lastRefill = blockedUntil;
+    if (++pending.rejections >= MAX_REJECTIONS) {
+      return false;
+    }
+    // The body of the rejected response is not consumed, the request is
+    // sent anew.
+    queue.addFirst(pending);
+    return true;
+  }
+
+  // must be called synchronized
+  private boolean canRunNow() {
+    long now = System.nanoTime();
+    if (now - blockedUntil < 0) {
+      return false;
+    }
+    if (maxConcurrentRequests > 0 && running >= maxConcurrentRequests) {
+      return false;
+    }
+    if (requestsPerSecond > 0) {
+      refill(now);
+      return tokens >= 1;
+    }
+    return true;
+  }
+
+  // must be called synchronized
+  private void refill(long now) {
+    double elapsedSeconds = (now - lastRefill) / 1e9;
+    tokens = Math.min(requestsPerSecond, tokens + elapsedSeconds * requestsPerSecond);
+    lastRefill = now;
+  }
+
+  /**
+   * Wakes up the dispatcher when the next token is available or the pause
+   * is over.  If only the concurrency limit blocks, completing requests
+   * trigger the dispatcher anyway.
+   */
+  // must be called synchronized
+  private void scheduleWakeUpIfNecessary() {
+    if (queue.isEmpty() || wakeUpScheduled) {
+      return;
+    }
+    long now = System.nanoTime();
+    long delay = Math.max(0, blockedUntil - now);
+    if (requestsPerSecond > 0 && tokens < 1) {
+      delay = Math.max(delay, (long) Math.ceil((1 - tokens) * 1e9 / requestsPerSecond));
+    }
+    if (delay == 0) {
+      return;
+    }
+    wakeUpScheduled = true;
+    SCHEDULER.schedule(() -> {
+      synchronized (this) {
+        wakeUpScheduled = false;
+      }
+      dispatch();
+    }, delay, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Evaluates the Retry-After header, which is either a number of seconds
+   * or an HTTP date.
+   */
+  static Duration getRetryAfter(HttpResponse<?> response) {
+    String value = response.headers().firstValue("Retry-After").orElse(null);
+    Duration result = value != null ? parseRetryAfter(value.trim()) : null;
+    if (result == null || result.isNegative()) {
+      return DEFAULT_RETRY_AFTER;
+    }
+    return result.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : result;
+  }
+
+  @Nullable
+  private static Duration parseRetryAfter(String value) {
+    try {
+      return Duration.ofSeconds(Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      try {
+        ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+        return Duration.between(ZonedDateTime.now(date.getZone()), date);
+      } catch (DateTimeParseException e2) {
+        return null;
+      }
+    }
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private static class PendingRequest<T> {
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final HttpResponse.BodyHandler<T> bodyHandler;
+    private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    // guarded by the governor
+    private int rejections;
+
+    PendingRequest(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+      this.client = client;
+      this.request = request;
+      this.bodyHandler = bodyHandler;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * Shares RequestGovernors among adapter instances.
+ * <p>
+ * The limits of an Imagga plan apply to the key, no matter how many
+ * adapters use it.  Therefore, the registry hands out one governor per URL
+ * and key.  If settings with the same key configure different limits, the
+ * limits of the first settings win, and a warning is logged.
+ */
+@DefaultAnnotation(NonNull.class)
+class RequestGovernorRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestGovernorRegistry.class);
+
+  private final BoundedRegistry<GovernorKey, RequestGovernor> governors = new BoundedRegistry<>(BoundedRegistry.DEFAULT_MAX_SIZE);
+
+  RequestGovernor getGovernor(ImaggaAdapterOptions options) {
+    GovernorKey key = new GovernorKey(options.getUrl(), options.getBasicAuthKey());
+    int requestsPerSecond = options.getMaxRequestsPerSecond();
+    int maxConcurrentRequests = options.getMaxConcurrentRequests();
+    int maxQueuedRequests = options.getMaxQueuedRequests();
+    RequestGovernor governor = governors.computeIfAbsent(key, k -> new RequestGovernor(requestsPerSecond, maxConcurrentRequests, maxQueuedRequests));
+    if (!governor.hasLimits(requestsPerSecond, maxConcurrentRequests, maxQueuedRequests)) {
+      LOG.warn("Conflicting request limits for the Imagga key at {}: ignoring {} requests per second, {} concurrent and {} queued requests, " +
+                      "the limits of the settings which used the key first apply", options.getUrl(),
+              requestsPerSecond, maxConcurrentRequests, maxQueuedRequests);
+    }
+    return governor;
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private static class GovernorKey {
+    private final String url;
+    private final String basicAuthKey;
+
+    GovernorKey(String url, String basicAuthKey) {
+      this.url = url;
+      this.basicAuthKey = basicAuthKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      GovernorKey that = (GovernorKey) o;
+      return url.equals(that.url) &&
+              basicAuthKey.equals(that.basicAuthKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(url, basicAuthKey);
+    }
+  }
+}
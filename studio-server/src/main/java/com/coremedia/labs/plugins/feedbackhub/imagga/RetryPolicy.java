@@ -0,0 +1,118 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries requests which failed for transient reasons.
+ * <p>
+ * Transient failures are I/O errors, like connection resets and timeouts,
+ * and server errors (5xx).  Other responses are final, since a retry would
+ * yield the same result.
+ * <p>
+ * The delays between the attempts grow exponentially, with full jitter, so
+ * that requests which failed together do not retry together.  No retry is
+ * started if it would end after the deadline of the request.
+ */
+@DefaultAnnotation(NonNull.class)
+class RetryPolicy {
+  private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+  private static final Duration MAX_BACKOFF = Duration.ofSeconds(10);
+
+  private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "imagga-retry-policy");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final int maxRetries;
+  private final long initialBackoffNanos;
+  private final long deadlineNanos;
+
+  /**
+   * @param maxRetries the number of retries after the first attempt
+   * @param initialBackoff the maximum delay before the first retry, doubled for each further retry
+   * @param deadline the maximum duration of all attempts together
+   */
+  RetryPolicy(int maxRetries, Duration initialBackoff, Duration deadline) {
+    this.maxRetries = Math.max(0, maxRetries);
+    this.initialBackoffNanos = initialBackoff.toNanos();
+    this.deadlineNanos = deadline.toNanos();
+  }
+
+  /**
+   * Executes the request, and retries it in case of transient failures.
+   * <p>
+   * The result is the response or failure of the last attempt.
+   */
+  <T> CompletableFuture<HttpResponse<T>> execute(Supplier<CompletableFuture<HttpResponse<T>>> request) {
+    CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    attempt(request, 0, System.nanoTime() + deadlineNanos, result);
+    return result;
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private <T> void attempt(Supplier<CompletableFuture<HttpResponse<T>>> request, int retry, long deadline, CompletableFuture<HttpResponse<T>> result) {
+    if (result.isDone()) {
+      // cancelled by the caller
+      return;
+    }
+    CompletableFuture<HttpResponse<T>> attempt;
+    try {
+      attempt = request.get();
+    } catch (RuntimeException e) {
+      attempt = CompletableFuture.failedFuture(e);
+    }
+    Cancellation.propagate(result, attempt);
+    attempt.whenComplete((response, throwable) -> {
+      long backoff = backoff(retry);
+      boolean retryable = throwable != null ? isTransient(throwable) : isTransient(response);
+      if (retryable && retry < maxRetries && System.nanoTime() + backoff - deadline < 0) {
+        LOG.debug("Retrying {} in {} ms after {}", response != null ? response.uri() : "request",
+                TimeUnit.NANOSECONDS.toMillis(backoff), throwable != null ? throwable.toString() : "status " + response.statusCode());
+        if (response != null) {
+          ImaggaResponseParser.discard(response);
+        }
+        SCHEDULER.schedule(() -> attempt(request, retry + 1, deadline, result), backoff, TimeUnit.NANOSECONDS);
+      } else if (throwable != null) {
+        result.completeExceptionally(throwable);
+      } else if (!result.complete(response)) {
+        ImaggaResponseParser.discard(response);
+      }
+    });
+  }
+
+  private long backoff(int retry) {
+    long ceiling = Math.min(MAX_BACKOFF.toNanos(), initialBackoffNanos << Math.min(retry, 20));
+    return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling) : 0;
+  }
+
+  static boolean isTransient(HttpResponse<?> response) {
+    return response.statusCode() >= 500;
+  }
+
+  static boolean isTransient(Throwable throwable) {
+    Throwable cause = throwable;
+    while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause instanceof IOException;
+  }
+}
@@ -0,0 +1,40 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A cache which is shared by all Studio server nodes, as second tier
+ * behind the local CoreMedia cache.
+ * <p>
+ * With a shared cache, a picture that has been tagged on one node need not
+ * be uploaded and tagged again on the other nodes.  The adapter ships
+ * {@link FileSystemSharedCache} for a shared directory.  Other stores, like
+ * a key-value database, can be plugged in by a Spring bean of this type.
+ * <p>
+ * Keys are hashes, which are safe to use as file names and reveal no
+ * secrets.  Values are opaque and contain their own expiry, so an
+ * implementation may keep expired entries, but it should drop them
+ * eventually.  The methods are invoked from a dedicated thread pool of the
+ * adapter, so they may block.  Failures are logged and treated like
+ * misses.
+ */
+@DefaultAnnotation(NonNull.class)
+public interface SharedCache {
+  /**
+   * @return the value, or null if there is none
+   */
+  @Nullable
+  byte[] get(String key) throws IOException;
+
+  /**
+   * @param timeToLive the time after which the value may be dropped
+   */
+  void put(String key, byte[] value, Duration timeToLive) throws IOException;
+
+  void remove(String key) throws IOException;
+}
@@ -0,0 +1,211 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The adapter's access to the {@link SharedCache}.
+ * <p>
+ * Encodes upload IDs and keyword lists together with their expiry, and
+ * hashes the keys, which contain the Imagga key.  Shared cache operations
+ * run on a dedicated thread pool, so that a slow store does not block
+ * request threads.  Failures of the store are logged and count as misses,
+ * so the shared cache can only save requests but never break tagging.
+ */
+@DefaultAnnotation(NonNull.class)
+class SharedCacheTier {
+  private static final Logger LOG = LoggerFactory.getLogger(SharedCacheTier.class);
+
+  private static final byte STRING = 1;
+  private static final byte KEYWORDS = 2;
+
+  private final SharedCache sharedCache;
+  private final ExecutorService executor;
+
+  SharedCacheTier(SharedCache sharedCache, int threads) {
+    this.sharedCache = sharedCache;
+    AtomicInteger count = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "imagga-shared-cache-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return the unexpired string, or null
+   */
+  CompletableFuture<Hit<String>> getString(String key) {
+    return get(key, STRING).thenApply(hit -> decode(hit, DataInput::readUTF));
+  }
+
+  /**
+   * @return the unexpired keyword list, or null
+   */
+  CompletableFuture<Hit<KeywordList>> getKeywords(String key) {
+    return get(key, KEYWORDS).thenApply(hit -> decode(hit, in -> {
+      int size = in.readInt();
+      String[] names = new String[size];
+      double[] confidences = new double[size];
+      for (int i = 0; i < size; i++) {
+        names[i] = in.readUTF();
+        confidences[i] = in.readDouble();
+      }
+      return new KeywordList(names, confidences);
+    }));
+  }
+
+  void putString(String key, String value, Duration timeToLive) {
+    put(key, STRING, timeToLive, out -> out.writeUTF(value));
+  }
+
+  void putKeywords(String key, KeywordList keywords, Duration timeToLive) {
+    put(key, KEYWORDS, timeToLive, out -> {
+      out.writeInt(keywords.size());
+      for (int i = 0; i < keywords.size(); i++) {
+        out.writeUTF(keywords.getName(i));
+        out.writeDouble(keywords.getConfidence(i));
+      }
+    });
+  }
+
+  /**
+   * Removes the entry.
+   * <p>
+   * Unlike the other operations, this is synchronous, because the removal
+   * must be effective before the entry is looked up again.
+   */
+  void remove(String key) {
+    try {
+      sharedCache.remove(hash(key));
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Cannot remove an entry from {}", sharedCache, e);
+    }
+  }
+
+  /**
+   * Stops the background reads and writes.  Pending writes are completed.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private CompletableFuture<Hit<DataInputStream>> get(String key, byte type) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        byte[] bytes = sharedCache.get(hash(key));
+        if (bytes == null) {
+          return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readByte() != type) {
+          return null;
+        }
+        Duration timeToLive = Duration.ofMillis(in.readLong() - System.currentTimeMillis());
+        return timeToLive.isNegative() || timeToLive.isZero() ? null : new Hit<>(in, timeToLive);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Cannot read from {}, treating it as a miss", sharedCache, e);
+        return null;
+      }
+    }, executor);
+  }
+
+  private void put(String key, byte type, Duration timeToLive, Writer writer) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(type);
+      out.writeLong(System.currentTimeMillis() + timeToLive.toMillis());
+      writer.write(out);
+      out.flush();
+      executor.execute(() -> {
+        try {
+          sharedCache.put(hash(key), bytes.toByteArray(), timeToLive);
+        } catch (IOException | RuntimeException e) {
+          LOG.warn("Cannot write to {}", sharedCache, e);
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Cannot write to {}", sharedCache, e);
+    }
+  }
+
+  @Nullable
+  private static <T> Hit<T> decode(@Nullable Hit<DataInputStream> hit, Reader<T> reader) {
+    if (hit == null) {
+      return null;
+    }
+    try {
+      return new Hit<>(reader.read(hit.getValue()), hit.getTimeToLive());
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Cannot decode an entry of the shared cache, treating it as a miss", e);
+      return null;
+    }
+  }
+
+  private static String hash(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder result = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return result.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private interface Writer {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private interface Reader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  /**
+   * A value from the shared cache with its remaining time to live.
+   */
+  static final class Hit<T> {
+    private final T value;
+    private final Duration timeToLive;
+
+    Hit(T value, Duration timeToLive) {
+      this.value = value;
+      this.timeToLive = timeToLive;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    Duration getTimeToLive() {
+      return timeToLive;
+    }
+  }
+}
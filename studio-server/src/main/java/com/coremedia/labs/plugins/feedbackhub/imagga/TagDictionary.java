@@ -0,0 +1,74 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import edu.umd.cs.findbugs.annotations.DefaultAnnotation;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps tag names to int IDs, so that cached keyword lists need not hold
+ * the same names over and over again.
+ * <p>
+ * Imagga's vocabulary is small compared to the number of cached pictures,
+ * so that a few thousand names per language cover all tags.  The dictionary
+ * only grows, therefore it is bounded.  If it is full, further names are
+ * not interned, and the keyword lists keep them themselves.
+ */
+@DefaultAnnotation(NonNull.class)
+class TagDictionary {
+  static final int NOT_INTERNED = -1;
+
+  private static final int MAX_SIZE = 100_000;
+  static final TagDictionary SHARED = new TagDictionary(MAX_SIZE);
+
+  private final int maxSize;
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  // Names are written before their IDs are published in ids, and the array
+  // is only replaced by larger copies, so that readers of an ID always find
+  // its name.
+  private volatile String[] names = new String[1024];
+  // guarded by this
+  private int size;
+
+  TagDictionary(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the ID of the name, or {@link #NOT_INTERNED} if the dictionary is full
+   */
+  int intern(String name) {
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(name);
+      if (id != null) {
+        return id;
+      }
+      if (size >= maxSize) {
+        return NOT_INTERNED;
+      }
+      String[] current = names;
+      if (size == current.length) {
+        current = Arrays.copyOf(current, Math.min(maxSize, 2 * size));
+      }
+      current[size] = name;
+      names = current;
+      ids.put(name, size);
+      return size++;
+    }
+  }
+
+  String getName(int id) {
+    return names[id];
+  }
+
+  synchronized int size() {
+    return size;
+  }
+}
@@ -0,0 +1,28 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedRegistryTest {
+  @Test
+  void reusesEntries() {
+    BoundedRegistry<String, Object> registry = new BoundedRegistry<>(2);
+    Object first = registry.computeIfAbsent("a", key -> new Object());
+
+    assertThat(registry.computeIfAbsent("a", key -> new Object())).isSameAs(first);
+  }
+
+  @Test
+  void dropsLeastRecentlyUsedEntry() {
+    BoundedRegistry<String, Object> registry = new BoundedRegistry<>(2);
+    Object a = registry.computeIfAbsent("a", key -> new Object());
+    Object b = registry.computeIfAbsent("b", key -> new Object());
+    registry.computeIfAbsent("a", key -> new Object());
+    registry.computeIfAbsent("c", key -> new Object());
+
+    assertThat(registry.size()).isEqualTo(2);
+    assertThat(registry.computeIfAbsent("a", key -> new Object())).isSameAs(a);
+    assertThat(registry.computeIfAbsent("b", key -> new Object())).isNotSameAs(b);
+  }
+}
@@ -0,0 +1,102 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class BulkTaggerTest {
+
+  @Test
+  void tagsAtMostParallelismBlobsAtATime() {
+    List<Blob> blobs = blobs(10);
+    AtomicInteger consumed = new AtomicInteger();
+    Iterator<Blob> iterator = blobs.stream().peek(blob -> consumed.incrementAndGet()).iterator();
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    BulkKeywordsTagging.Listener listener = mock(BulkKeywordsTagging.Listener.class);
+
+    CompletableFuture<BulkKeywordsTagging.Result> result = new BulkTagger(iterator, blob -> {
+      CompletableFuture<Void> tagging = new CompletableFuture<>();
+      pending.add(tagging);
+      return tagging;
+    }, listener).run(3);
+
+    assertThat(pending).hasSize(3);
+    assertThat(consumed).hasValue(3);
+    pending.get(0).complete(null);
+    assertThat(pending).hasSize(4);
+    assertThat(consumed).hasValue(4);
+    verify(listener).tagged(blobs.get(0), 1);
+
+    for (int i = 1; i < blobs.size(); i++) {
+      pending.get(i).complete(null);
+    }
+    assertThat(result).isCompleted();
+    assertThat(result.join().getTagged()).isEqualTo(10);
+    assertThat(result.join().getFailed()).isZero();
+  }
+
+  @Test
+  void failuresAreReportedPerBlob() {
+    List<Blob> blobs = blobs(3);
+    FeedbackHubException failure = new FeedbackHubException("failed", ImaggaFeedbackHubErrorCode.UPLOAD_FAILED, null);
+    BulkKeywordsTagging.Listener listener = mock(BulkKeywordsTagging.Listener.class);
+
+    CompletableFuture<BulkKeywordsTagging.Result> result = new BulkTagger(blobs.iterator(),
+            blob -> blob == blobs.get(1) ? CompletableFuture.failedFuture(failure) : CompletableFuture.completedFuture(null),
+            listener).run(2);
+
+    assertThat(result.join().getTagged()).isEqualTo(2);
+    assertThat(result.join().getFailed()).isEqualTo(1);
+    verify(listener).failed(eq(blobs.get(1)), eq(failure), anyInt());
+    verify(listener, times(2)).tagged(any(), anyInt());
+  }
+
+  @Test
+  void manyCachedBlobsDoNotOverflowTheStack() {
+    Blob blob = mock(Blob.class);
+    Iterator<Blob> iterator = Stream.generate(() -> blob).limit(100_000).iterator();
+
+    CompletableFuture<BulkKeywordsTagging.Result> result = new BulkTagger(iterator,
+            ignored -> CompletableFuture.completedFuture(null), new BulkKeywordsTagging.Listener() {}).run(1);
+
+    assertThat(result.join().getTagged()).isEqualTo(100_000);
+  }
+
+  @Test
+  void cancellationStopsConsumingTheBlobs() {
+    AtomicInteger consumed = new AtomicInteger();
+    Iterator<Blob> iterator = blobs(10).stream().peek(blob -> consumed.incrementAndGet()).iterator();
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+    CompletableFuture<BulkKeywordsTagging.Result> result = new BulkTagger(iterator, blob -> {
+      CompletableFuture<Void> tagging = new CompletableFuture<>();
+      pending.add(tagging);
+      return tagging;
+    }, new BulkKeywordsTagging.Listener() {}).run(2);
+    result.cancel(false);
+    pending.forEach(tagging -> tagging.complete(null));
+
+    assertThat(consumed).hasValue(2);
+  }
+
+  private static List<Blob> blobs(int count) {
+    return IntStream.range(0, count).mapToObj(i -> mock(Blob.class)).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,61 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CancellationTest {
+  @Test
+  void thenComposeCancelsSource() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    CompletableFuture<String> result = Cancellation.thenCompose(source, value -> CompletableFuture.completedFuture(value + "!"));
+
+    result.cancel(true);
+
+    assertThat(source).isCancelled();
+  }
+
+  @Test
+  void thenComposeCancelsNextStage() {
+    CompletableFuture<String> next = new CompletableFuture<>();
+    CompletableFuture<String> result = Cancellation.thenCompose(CompletableFuture.completedFuture("value"), value -> next);
+
+    result.cancel(true);
+
+    assertThat(next).isCancelled();
+  }
+
+  @Test
+  void thenComposeWrapsFailures() {
+    CompletableFuture<String> result = Cancellation.thenCompose(CompletableFuture.failedFuture(new IllegalStateException("failed")),
+            value -> CompletableFuture.completedFuture(value));
+
+    assertThatThrownBy(result::join)
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void deadlineFailsAndCancelsWork() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+    CompletableFuture<String> result = Cancellation.withDeadline(work, Duration.ofMillis(50), () -> new IllegalStateException("timeout"));
+
+    assertThatThrownBy(result::join).hasCauseInstanceOf(IllegalStateException.class);
+    assertThat(work).isCancelled();
+  }
+
+  @Test
+  void workWithinDeadlineCompletes() {
+    CompletableFuture<String> work = new CompletableFuture<>();
+    CompletableFuture<String> result = Cancellation.withDeadline(work, Duration.ofSeconds(10), () -> new IllegalStateException("timeout"));
+
+    work.complete("value");
+
+    assertThat(result.join()).isEqualTo("value");
+  }
+}
@@ -0,0 +1,122 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+class CircuitBreakerTest {
+
+  @Mock
+  HttpResponse<InputStream> okResponse;
+
+  @Mock
+  HttpResponse<InputStream> serverErrorResponse;
+
+  @Mock
+  HttpResponse<InputStream> unauthorizedResponse;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(okResponse.statusCode()).thenReturn(200);
+    when(serverErrorResponse.statusCode()).thenReturn(503);
+    when(unauthorizedResponse.statusCode()).thenReturn(401);
+  }
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, Duration.ofMinutes(1));
+    AtomicInteger requests = new AtomicInteger();
+
+    circuitBreaker.execute(() -> CompletableFuture.completedFuture(serverErrorResponse));
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    circuitBreaker.execute(() -> CompletableFuture.failedFuture(new IOException("connection reset")));
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+    CompletableFuture<HttpResponse<InputStream>> result = circuitBreaker.execute(() -> {
+      requests.incrementAndGet();
+      return CompletableFuture.completedFuture(okResponse);
+    });
+    assertThatThrownBy(result::get)
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(FeedbackHubException.class);
+    assertThat(requests).hasValue(0);
+  }
+
+  @Test
+  void successResetsFailures() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, Duration.ofMinutes(1));
+
+    circuitBreaker.execute(() -> CompletableFuture.completedFuture(serverErrorResponse));
+    circuitBreaker.execute(() -> CompletableFuture.completedFuture(okResponse));
+    circuitBreaker.execute(() -> CompletableFuture.completedFuture(serverErrorResponse));
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void probeClosesBreaker() throws ExecutionException, InterruptedException {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, Duration.ZERO);
+    circuitBreaker.execute(() -> CompletableFuture.completedFuture(unauthorizedResponse));
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+    CompletableFuture<HttpResponse<InputStream>> pendingProbe = new CompletableFuture<>();
+    circuitBreaker.execute(() -> pendingProbe);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    // only one probe at a time
+    assertThat(circuitBreaker.execute(() -> CompletableFuture.completedFuture(okResponse))).isCompletedExceptionally();
+
+    pendingProbe.complete(okResponse);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.execute(() -> CompletableFuture.completedFuture(okResponse)).get()).isSameAs(okResponse);
+  }
+
+  @Test
+  void expiredDeadlineIsFailure() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, Duration.ofMinutes(1));
+    CompletableFuture<HttpResponse<InputStream>> hangingResponse = new CompletableFuture<>();
+
+    CompletableFuture<HttpResponse<InputStream>> result = Cancellation.withDeadline(circuitBreaker.execute(() -> hangingResponse),
+            Duration.ofMillis(50), () -> new IllegalStateException("timeout"));
+
+    assertThatThrownBy(result::join).hasCauseInstanceOf(IllegalStateException.class);
+    assertThat(hangingResponse).isCancelled();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  void cancellationByCallerIsNeutral() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, Duration.ofMinutes(1));
+    CompletableFuture<HttpResponse<InputStream>> pendingResponse = new CompletableFuture<>();
+
+    CompletableFuture<HttpResponse<InputStream>> result = Cancellation.withDeadline(circuitBreaker.execute(() -> pendingResponse),
+            Duration.ofSeconds(10), () -> new IllegalStateException("timeout"));
+    result.cancel(true);
+
+    assertThat(pendingResponse).isCancelled();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void disabled() {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("test", 0, Duration.ofMinutes(1));
+    for (int i = 0; i < 10; i++) {
+      circuitBreaker.execute(() -> CompletableFuture.completedFuture(serverErrorResponse));
+    }
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+}
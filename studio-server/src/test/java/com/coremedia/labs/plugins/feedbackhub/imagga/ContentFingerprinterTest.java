@@ -0,0 +1,72 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+class ContentFingerprinterTest {
+
+  @Mock
+  Blob blob;
+
+  @Mock
+  Blob copy;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  void fingerprintIsSha256OfContent() throws IOException {
+    String fingerprint = ContentFingerprinter.fingerprint(new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)));
+    assertThat(fingerprint).isEqualTo("sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+  }
+
+  @Test
+  void copiesWithDifferentETagsHaveTheSameFingerprint() {
+    when(blob.getETag()).thenReturn("etag1");
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+    when(copy.getETag()).thenReturn("etag2");
+    when(copy.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+    ContentFingerprinter fingerprinter = new ContentFingerprinter(1);
+    assertThat(fingerprinter.fingerprint(blob).join()).isEqualTo(fingerprinter.fingerprint(copy).join());
+  }
+
+  @Test
+  void readErrorIsTransient() {
+    when(blob.getETag()).thenReturn("etag");
+    when(blob.getInputStream()).thenReturn(new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("connection reset");
+      }
+    });
+
+    assertThatThrownBy(() -> new ContentFingerprinter(1).fingerprint(blob).join())
+            .isInstanceOf(CompletionException.class)
+            .satisfies(e -> assertThat(RetryPolicy.isTransient(e)).isTrue());
+  }
+
+  @Test
+  void shutdownRejectsFurtherBlobs() {
+    ContentFingerprinter fingerprinter = new ContentFingerprinter(1);
+    fingerprinter.shutdown();
+
+    assertThatThrownBy(() -> fingerprinter.fingerprint(blob)).isInstanceOf(RejectedExecutionException.class);
+  }
+}
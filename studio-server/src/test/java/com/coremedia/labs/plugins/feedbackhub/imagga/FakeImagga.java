@@ -0,0 +1,230 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for Imagga, for tests and load tests without quota.
+ * <p>
+ * Implements /uploads and /tags, both with an upload ID and with direct
+ * image uploads.  Latency, server errors, rejections with status 429 and
+ * the number of tags are configurable.  The tags are generated in the
+ * requested languages and honor the limit parameter.
+ */
+class FakeImagga implements AutoCloseable {
+  private static final String[] WORDS = {
+          "landscape", "mountain", "sky", "travel", "tourism", "snow", "peak", "valley", "nature", "outdoor",
+          "scenery", "lake", "water", "forest", "tree", "summer", "cloud", "hiking", "rock", "alpine"
+  };
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "fake-imagga");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Duration latency;
+  private final double errorRate;
+  private final double tooManyRequestsRate;
+  private final int tags;
+
+  private final AtomicInteger uploads = new AtomicInteger();
+  private final AtomicInteger tagsRequests = new AtomicInteger();
+  private final AtomicInteger rejections = new AtomicInteger();
+
+  private FakeImagga(Builder builder) throws IOException {
+    latency = builder.latency;
+    errorRate = builder.errorRate;
+    tooManyRequestsRate = builder.tooManyRequestsRate;
+    tags = builder.tags;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/uploads", this::upload);
+    server.createContext("/tags", this::tags);
+    server.start();
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  int getUploads() {
+    return uploads.get();
+  }
+
+  int getTagsRequests() {
+    return tagsRequests.get();
+  }
+
+  int getRejections() {
+    return rejections.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private void upload(HttpExchange exchange) throws IOException {
+    drainRequest(exchange);
+    if (simulateFailure(exchange)) {
+      return;
+    }
+    int uploadId = uploads.incrementAndGet();
+    respond(exchange, 200, "{\"result\":{\"upload_id\":\"fake-" + uploadId + "\"},\"status\":{\"text\":\"\",\"type\":\"success\"}}");
+  }
+
+  private void tags(HttpExchange exchange) throws IOException {
+    drainRequest(exchange);
+    if (simulateFailure(exchange)) {
+      return;
+    }
+    tagsRequests.incrementAndGet();
+    Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+    List<String> languages = Arrays.asList(parameters.getOrDefault("language", "en").split(","));
+    int limit = Integer.parseInt(parameters.getOrDefault("limit", "-1"));
+    respond(exchange, 200, tagsResponse(limit > 0 ? Math.min(limit, tags) : tags, languages));
+  }
+
+  private boolean simulateFailure(HttpExchange exchange) throws IOException {
+    if (!latency.isZero()) {
+      try {
+        Thread.sleep(latency.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    double random = ThreadLocalRandom.current().nextDouble();
+    if (random < tooManyRequestsRate) {
+      rejections.incrementAndGet();
+      exchange.getResponseHeaders().set("Retry-After", "1");
+      respond(exchange, 429, "{\"status\":{\"text\":\"Too many requests\",\"type\":\"error\"}}");
+      return true;
+    }
+    if (random < tooManyRequestsRate + errorRate) {
+      respond(exchange, 500, "{\"status\":{\"text\":\"Simulated server error\",\"type\":\"error\"}}");
+      return true;
+    }
+    return false;
+  }
+
+  static String tagsResponse(int count, List<String> languages) {
+    StringBuilder json = new StringBuilder("{\"result\":{\"tags\":[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      double confidence = 100.0 - i * 99.0 / Math.max(1, count);
+      json.append("{\"confidence\":").append(confidence).append(",\"tag\":{");
+      String word = WORDS[i % WORDS.length] + (i < WORDS.length ? "" : " " + i / WORDS.length);
+      for (int j = 0; j < languages.size(); j++) {
+        if (j > 0) {
+          json.append(',');
+        }
+        json.append('"').append(languages.get(j)).append("\":\"").append(word).append(" (").append(languages.get(j)).append(")\"");
+      }
+      json.append("}}");
+    }
+    return json.append("]},\"status\":{\"text\":\"\",\"type\":\"success\"}}").toString();
+  }
+
+  private static void drainRequest(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      body.transferTo(OutputStream.nullOutputStream());
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream response = exchange.getResponseBody()) {
+      response.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> result = new HashMap<>();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        int separator = parameter.indexOf('=');
+        if (separator > 0) {
+          result.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                  URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return result;
+  }
+
+
+  // --- builder ----------------------------------------------------
+
+  static class Builder {
+    private Duration latency = Duration.ZERO;
+    private double errorRate;
+    private double tooManyRequestsRate;
+    private int tags = 50;
+
+    /**
+     * The time each request takes.
+     */
+    Builder latency(Duration latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /**
+     * The fraction of requests which fail with status 500.
+     */
+    Builder errorRate(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * The fraction of requests which are rejected with status 429.
+     */
+    Builder tooManyRequestsRate(double tooManyRequestsRate) {
+      this.tooManyRequestsRate = tooManyRequestsRate;
+      return this;
+    }
+
+    /**
+     * The number of tags per response, before the limit parameter.
+     */
+    Builder tags(int tags) {
+      this.tags = tags;
+      return this;
+    }
+
+    FakeImagga start() throws IOException {
+      return new FakeImagga(this);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSystemSharedCacheTest {
+  private static final String KEY = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+  private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void valuesAreShared() throws IOException {
+    new FileSystemSharedCache(directory).put(KEY, VALUE, Duration.ofHours(1));
+
+    // e.g. another node
+    FileSystemSharedCache other = new FileSystemSharedCache(directory);
+    assertThat(other.get(KEY)).isEqualTo(VALUE);
+    assertThat(other.get(KEY.replace('9', '8'))).isNull();
+  }
+
+  @Test
+  void valuesAreReplaced() throws IOException {
+    FileSystemSharedCache sharedCache = new FileSystemSharedCache(directory);
+    sharedCache.put(KEY, "old".getBytes(StandardCharsets.UTF_8), Duration.ofHours(1));
+    sharedCache.put(KEY, VALUE, Duration.ofHours(1));
+
+    assertThat(sharedCache.get(KEY)).isEqualTo(VALUE);
+    // no temporary files are left behind
+    try (var files = Files.list(directory.resolve(KEY.substring(0, 2)))) {
+      assertThat(files).hasSize(1);
+    }
+  }
+
+  @Test
+  void expiredValuesAreDeleted() throws IOException {
+    FileSystemSharedCache sharedCache = new FileSystemSharedCache(directory);
+    sharedCache.put(KEY, VALUE, Duration.ofSeconds(-1));
+
+    assertThat(sharedCache.get(KEY)).isNull();
+    assertThat(directory.resolve(KEY.substring(0, 2)).resolve(KEY)).doesNotExist();
+  }
+
+  @Test
+  void valuesAreRemoved() throws IOException {
+    FileSystemSharedCache sharedCache = new FileSystemSharedCache(directory);
+    sharedCache.put(KEY, VALUE, Duration.ofHours(1));
+    sharedCache.remove(KEY);
+    sharedCache.remove(KEY);
+
+    assertThat(sharedCache.get(KEY)).isNull();
+  }
+}
@@ -0,0 +1,78 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HedgedRequestsTest {
+
+  @Mock
+  HttpResponse<InputStream> response;
+
+  private final HedgedRequests hedgedRequests = new HedgedRequests(Duration.ofMillis(10));
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  void noHedgingWithoutSamples() {
+    assertThat(hedgedRequests.getHedgeDelay()).isNull();
+  }
+
+  @Test
+  void slowRequestIsHedged() throws InterruptedException, ExecutionException, TimeoutException {
+    for (int i = 0; i < 20; i++) {
+      hedgedRequests.send(() -> CompletableFuture.completedFuture(response)).get();
+    }
+    assertThat(hedgedRequests.getHedgeDelay()).isEqualTo(Duration.ofMillis(10));
+
+    AtomicInteger requests = new AtomicInteger();
+    CompletableFuture<HttpResponse<InputStream>> hanging = new CompletableFuture<>();
+    CompletableFuture<HttpResponse<InputStream>> result = hedgedRequests.send(() ->
+            requests.incrementAndGet() == 1 ? hanging : CompletableFuture.completedFuture(response));
+
+    assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(response);
+    assertThat(requests).hasValue(2);
+    assertThat(hanging).isCancelled();
+  }
+
+  @Test
+  void failureOfFirstRequestWaitsForHedgedRequest() throws InterruptedException, ExecutionException, TimeoutException {
+    for (int i = 0; i < 20; i++) {
+      hedgedRequests.send(() -> CompletableFuture.completedFuture(response)).get();
+    }
+
+    AtomicInteger requests = new AtomicInteger();
+    CompletableFuture<HttpResponse<InputStream>> failing = new CompletableFuture<>();
+    CompletableFuture<HttpResponse<InputStream>> hedged = new CompletableFuture<>();
+    CompletableFuture<HttpResponse<InputStream>> result = hedgedRequests.send(() -> {
+      if (requests.incrementAndGet() == 1) {
+        return failing;
+      }
+      // The first request fails while the hedged one is being sent.
+      failing.completeExceptionally(new IOException("connection reset"));
+      return hedged;
+    });
+
+    assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+    assertThat(result).isNotDone();
+    hedged.complete(response);
+    assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(response);
+  }
+}
@@ -0,0 +1,91 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+class ImagePreprocessorTest {
+
+  @Mock
+  Blob blob;
+
+  private final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(1);
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(blob.getETag()).thenReturn("etag");
+  }
+
+  @Test
+  void downscaleGif() throws IOException {
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(encode(new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB), "gif")));
+
+    ImagePreprocessor.PreparedImage prepared = imagePreprocessor.prepareSync(blob, 100);
+
+    assertThat(prepared.getSourceFormat()).isEqualTo(ImagePreprocessor.ImageFormat.GIF);
+    BufferedImage result = ImageIO.read(new ByteArrayInputStream(prepared.getData()));
+    assertThat(result.getWidth()).isEqualTo(100);
+    assertThat(result.getHeight()).isEqualTo(50);
+  }
+
+  @Test
+  void keepSmallImageSize() throws IOException {
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(encode(new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB), "png")));
+
+    ImagePreprocessor.PreparedImage prepared = imagePreprocessor.prepareSync(blob, 100);
+
+    assertThat(prepared.getSourceFormat()).isEqualTo(ImagePreprocessor.ImageFormat.PNG);
+    BufferedImage result = ImageIO.read(new ByteArrayInputStream(prepared.getData()));
+    assertThat(result.getWidth()).isEqualTo(40);
+    assertThat(result.getHeight()).isEqualTo(30);
+  }
+
+  @Test
+  void rejectUnknownFormat() {
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream("no image".getBytes()));
+
+    assertThatThrownBy(() -> imagePreprocessor.prepareSync(blob, 100))
+            .isInstanceOfSatisfying(FeedbackHubException.class,
+                    e -> assertThat(e.getErrorCode()).isEqualTo(ImaggaFeedbackHubErrorCode.NOT_SUPPORTED_FILE_TYPE));
+  }
+
+  @Test
+  void uploadUndecodableJpegUnchanged() {
+    byte[] corrupt = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 'n', 'o', ' ', 'i', 'm', 'a', 'g', 'e'};
+    when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(corrupt));
+
+    ImagePreprocessor.PreparedImage prepared = imagePreprocessor.prepareSync(blob, 100);
+
+    assertThat(prepared.isOriginal()).isTrue();
+    assertThat(prepared.getSourceFormat()).isEqualTo(ImagePreprocessor.ImageFormat.JPEG);
+  }
+
+  @Test
+  void shutdownRejectsFurtherImages() {
+    ImagePreprocessor shutDown = new ImagePreprocessor(1);
+    shutDown.shutdown();
+
+    assertThatThrownBy(() -> shutDown.prepare(blob, 100)).isInstanceOf(RejectedExecutionException.class);
+  }
+
+  private static byte[] encode(BufferedImage image, String format) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(image, format, bytes);
+    return bytes.toByteArray();
+  }
+}
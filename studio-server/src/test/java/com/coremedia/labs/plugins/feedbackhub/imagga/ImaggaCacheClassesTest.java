@@ -0,0 +1,31 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ImaggaCacheClassesTest {
+  @Test
+  void configureSetsCapacities() {
+    Cache cache = mock(Cache.class);
+    ImaggaCacheClasses.configure(cache, 1024, 4096);
+
+    verify(cache).setCapacity(ImaggaCacheClasses.UPLOAD_IDS, 1024);
+    verify(cache).setCapacity(ImaggaCacheClasses.TAGS, 4096);
+  }
+
+  @Test
+  void weightGrowsWithSize() {
+    KeywordList small = new KeywordList(new String[]{"sky"}, new double[]{42.5});
+    KeywordList large = new KeywordList(new String[]{"sky", "cloud", "blue", "air"}, new double[]{80.0, 42.5, 30.0, 12.0});
+
+    assertThat(ImaggaCacheClasses.weight(large)).isGreaterThan(ImaggaCacheClasses.weight(small));
+    assertThat(ImaggaCacheClasses.weight("upload-id-with-a-long-value")).isGreaterThan(ImaggaCacheClasses.weight("id"));
+    assertThat(ImaggaCacheClasses.weight(List.of(1, 2))).isGreaterThan(ImaggaCacheClasses.weight(List.of()));
+  }
+}
@@ -0,0 +1,40 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImaggaExecutorsTest {
+  @Test
+  void asModeIgnoresCase() {
+    assertThat(ImaggaExecutors.asMode("Platform")).isEqualTo(ImaggaExecutors.Mode.PLATFORM);
+    assertThat(ImaggaExecutors.asMode(" virtual ")).isEqualTo(ImaggaExecutors.Mode.VIRTUAL);
+    assertThatThrownBy(() -> ImaggaExecutors.asMode("bogus")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void defaultModeHasNoExecutor() {
+    assertThat(ImaggaExecutors.create(ImaggaExecutors.Mode.DEFAULT, 2, "imagga-test")).isNull();
+  }
+
+  @Test
+  void platformModeNamesThreads() throws ExecutionException, InterruptedException {
+    ExecutorService executor = ImaggaExecutors.create(ImaggaExecutors.Mode.PLATFORM, 2, "imagga-test");
+
+    assertThat(executor.submit(() -> Thread.currentThread().getName()).get()).startsWith("imagga-test-");
+    executor.shutdown();
+  }
+
+  @Test
+  void virtualModeRunsTasks() throws ExecutionException, InterruptedException {
+    // falls back to platform threads before Java 21
+    ExecutorService executor = ImaggaExecutors.create(ImaggaExecutors.Mode.VIRTUAL, 2, "imagga-test");
+
+    assertThat(executor.submit(() -> "done").get()).isEqualTo("done");
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,62 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.FeedbackHubAdapter;
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+class ImaggaFeedbackHubAdapterFactoryTest {
+
+  @Mock
+  ImaggaFeedbackHubAdapterSettings settings;
+
+  @Mock
+  ImaggaFeedbackHubAdapterSettings otherSettings;
+
+  private ImaggaFeedbackHubAdapterFactory factory;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    factory = new ImaggaFeedbackHubAdapterFactory(null);
+  }
+
+  @Test
+  void missingBasicAuthKey() {
+    assertThatThrownBy(() -> factory.create(settings)).isInstanceOf(FeedbackHubException.class);
+  }
+
+  @Test
+  void reuseAdapterForEqualSettings() {
+    when(settings.getBasicAuthKey()).thenReturn("key");
+    when(otherSettings.getBasicAuthKey()).thenReturn("key");
+
+    FeedbackHubAdapter adapter = factory.create(settings);
+    assertThat(factory.create(otherSettings)).isSameAs(adapter);
+
+    when(otherSettings.getLimit()).thenReturn(5);
+    assertThat(factory.create(otherSettings)).isNotSameAs(adapter);
+  }
+
+  @Test
+  void destroyShutsDownExecutors() {
+    ExecutorService clientExecutor = Executors.newSingleThreadExecutor();
+    ExecutorService responseExecutor = Executors.newSingleThreadExecutor();
+    ImaggaFeedbackHubAdapterFactory factoryWithExecutors =
+            new ImaggaFeedbackHubAdapterFactory(null, null, ImaggaMetrics.NOOP, null, clientExecutor, responseExecutor);
+
+    factoryWithExecutors.destroy();
+
+    assertThat(clientExecutor.isShutdown()).isTrue();
+    assertThat(responseExecutor.isShutdown()).isTrue();
+  }
+}
@@ -1,29 +1,52 @@
 package com.coremedia.labs.plugins.feedbackhub.imagga;
 
+import com.coremedia.cache.Cache;
+import com.coremedia.cache.CacheKey;
 import com.coremedia.feedbackhub.adapter.Blob;
 import com.coremedia.feedbackhub.adapter.FeedbackContext;
 import com.coremedia.feedbackhub.adapter.FeedbackHubException;
 import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.coremedia.labs.plugins.feedbackhub.imagga.ImaggaTestFixtures.newCache;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ImaggaFeedbackHubAdapterTest {
@@ -57,6 +80,12 @@ class ImaggaFeedbackHubAdapterTest {
   @Mock
   FeedbackContext context;
 
+  @TempDir
+  Path sharedCacheDirectory;
+
+  @TempDir
+  Path keywordStoreDirectory;
+
   @BeforeEach
   void setUp() {
     MockitoAnnotations.initMocks(this);
@@ -66,6 +95,10 @@ class ImaggaFeedbackHubAdapterTest {
 
     //blob
     when(blob.getETag()).thenReturn(ETAG);
+
+    HttpHeaders noHeaders = HttpHeaders.of(Collections.emptyMap(), (name, value) -> true);
+    when(uploadIDResponse.headers()).thenReturn(noHeaders);
+    when(keyWordsResponse.headers()).thenReturn(noHeaders);
   }
 
 
@@ -180,6 +213,348 @@ class ImaggaFeedbackHubAdapterTest {
     assertThat(errorCode).isEqualTo(ImaggaFeedbackHubErrorCode.ERROR_PROCESSING_JSON);
   }
 
+  @Test
+  void getKeywordsForSeveralLanguages() throws ExecutionException, InterruptedException {
+    ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY)
+            .minAccuracy(MIN_ACCURACY)
+            .limit(LIMIT)
+            .languages(List.of("en", "fr"))
+            .build();
+    imaggaFeedbackHubAdapter = newAdapter(options);
+    mockUploadRequest(true, false, false);
+
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + "/tags" + concatUrlParameters("image_upload_id=" + UPLOAD_ID, "language=de,en,fr", "limit=" + LIMIT, "threshold=" + MIN_ACCURACY + ".0")))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    when(httpClient.sendAsync(eq(request), any())).thenReturn(CompletableFuture.completedFuture(keyWordsResponse));
+    when(keyWordsResponse.statusCode()).thenReturn(200);
+    when(keyWordsResponse.body()).thenAnswer(invocation -> body("{result:{tags:[{confidence:10,tag:{de:Stichwort,en:keyword,fr:mot}}]}}"));
+
+    List<Keyword> keywords = imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+    assertThat(keywords).containsExactly(new Keyword("Stichwort", 10.0));
+  }
+
+  @Test
+  void concurrentGetKeywordsShareOneUpload() {
+    CompletableFuture<HttpResponse<Object>> pendingUpload = new CompletableFuture<>();
+    when(httpClient.sendAsync(any(), any())).thenReturn(pendingUpload);
+
+    imaggaFeedbackHubAdapter.getKeywords(context, blob, locale);
+    imaggaFeedbackHubAdapter.getKeywords(context, blob, locale);
+
+    verify(httpClient, times(1)).sendAsync(any(), any());
+  }
+
+  @Test
+  void abandonedGetKeywordsCancelUpload() {
+    CompletableFuture<HttpResponse<Object>> pendingUpload = new CompletableFuture<>();
+    when(httpClient.sendAsync(any(), any())).thenReturn(pendingUpload);
+
+    CompletableFuture<List<Keyword>> first = imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture();
+    CompletableFuture<List<Keyword>> second = imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture();
+
+    first.cancel(true);
+    assertThat(pendingUpload).isNotCancelled();
+    second.cancel(true);
+    assertThat(pendingUpload).isCancelled();
+  }
+
+  @Test
+  void slowUploadTimesOut() {
+    CompletableFuture<HttpResponse<Object>> pendingUpload = new CompletableFuture<>();
+    when(httpClient.sendAsync(any(), any())).thenReturn(pendingUpload);
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY)
+            .uploadDeadline(Duration.ofMillis(50))
+            .build());
+
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.TIMEOUT);
+    assertThat(pendingUpload).isCancelled();
+  }
+
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void rejectedUploadIdIsUploadedAgain() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    HttpResponse<Object> rejected = mock(HttpResponse.class);
+    when(rejected.statusCode()).thenReturn(400);
+    when(rejected.headers()).thenReturn(HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+    when(rejected.body()).thenAnswer(invocation -> body("{status:{text:" + ERROR_TEXT + "}}"));
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + "/tags" + concatUrlParameters("image_upload_id=" + UPLOAD_ID, "language=de", "limit=" + LIMIT, "threshold=" + MIN_ACCURACY + ".0")))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    when(httpClient.sendAsync(eq(request), any()))
+            .thenReturn(CompletableFuture.completedFuture(rejected))
+            .thenReturn(CompletableFuture.completedFuture(keyWordsResponse));
+    when(keyWordsResponse.statusCode()).thenReturn(200);
+    when(keyWordsResponse.body()).thenAnswer(invocation -> body("{result:{tags:[{confidence:10,tag:{de:keyword}}]}}"));
+
+    List<Keyword> keywords = imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+    assertThat(keywords).containsExactly(new Keyword("keyword", 10.0));
+    // upload, tags, upload, tags
+    verify(httpClient, times(4)).sendAsync(any(), any());
+  }
+
+  @Test
+  void serverErrorOfTagsRequestIsNoReasonToUploadAgain() throws InterruptedException {
+    mockUploadRequest(true, false, false);
+    HttpResponse<Object> unavailable = mock(HttpResponse.class);
+    when(unavailable.statusCode()).thenReturn(503);
+    when(unavailable.headers()).thenReturn(HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+    when(unavailable.body()).thenAnswer(invocation -> body("{status:{text:" + ERROR_TEXT + "}}"));
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + "/tags" + concatUrlParameters("image_upload_id=" + UPLOAD_ID, "language=de", "limit=" + LIMIT, "threshold=" + MIN_ACCURACY + ".0")))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    when(httpClient.sendAsync(eq(request), any())).thenReturn(CompletableFuture.completedFuture(unavailable));
+
+    ImaggaFeedbackHubErrorCode errorCode = null;
+    try {
+      imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+    } catch (ExecutionException e) {
+      FeedbackHubException cause = (FeedbackHubException) e.getCause();
+      errorCode = (ImaggaFeedbackHubErrorCode) cause.getErrorCode();
+    }
+    assertThat(errorCode).isEqualTo(ImaggaFeedbackHubErrorCode.GET_TAGS_FROM_UPLOAD_FAILED);
+    // upload, tags
+    verify(httpClient, times(2)).sendAsync(any(), any());
+  }
+
+  @Test
+  void directTaggingNeedsOneRequest() throws ExecutionException, InterruptedException {
+    ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY)
+            .minAccuracy(MIN_ACCURACY)
+            .limit(LIMIT)
+            .directTagging(true)
+            .build();
+    imaggaFeedbackHubAdapter = newAdapter(options);
+    when(httpClient.sendAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(keyWordsResponse));
+    when(keyWordsResponse.statusCode()).thenReturn(200);
+    when(keyWordsResponse.body()).thenAnswer(invocation -> body("{result:{tags:[{confidence:10,tag:{de:keyword}}]}}"));
+
+    List<Keyword> keywords = imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+    assertThat(keywords).containsExactly(new Keyword("keyword", 10.0));
+
+    ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient, times(1)).sendAsync(request.capture(), any());
+    assertThat(request.getValue().method()).isEqualTo("POST");
+    assertThat(request.getValue().uri()).isEqualTo(URI.create(URL + "/tags" + concatUrlParameters("language=de", "limit=" + LIMIT, "threshold=" + MIN_ACCURACY + ".0")));
+  }
+
+  @Test
+  void bulkTaggingTagsAllBlobs() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    BulkKeywordsTagging.Listener listener = mock(BulkKeywordsTagging.Listener.class);
+
+    BulkKeywordsTagging.Result result = imaggaFeedbackHubAdapter.tagAll(Stream.of(blob), List.of(locale), 2, listener)
+            .toCompletableFuture().get();
+
+    assertThat(result.getTagged()).isEqualTo(1);
+    assertThat(result.getFailed()).isZero();
+    verify(listener).tagged(blob, 1);
+  }
+
+  @Test
+  void fullTagListServesAllSettings() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + "/tags" + concatUrlParameters("image_upload_id=" + UPLOAD_ID, "language=de", "limit=-1", "threshold=0.0")))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    when(httpClient.sendAsync(eq(request), any())).thenReturn(CompletableFuture.completedFuture(keyWordsResponse));
+    when(keyWordsResponse.statusCode()).thenReturn(200);
+    when(keyWordsResponse.body()).thenAnswer(invocation ->
+            body("{result:{tags:[{confidence:80,tag:{de:Himmel}},{confidence:40,tag:{de:Wolke}},{confidence:20,tag:{de:Luft}}]}}"));
+    Cache cache = newCache();
+    ImaggaFeedbackHubAdapter strict = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(50).fullTagList(true).build(), cache, null);
+    ImaggaFeedbackHubAdapter lenient = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(10).limit(2).fullTagList(true).build(), cache, null);
+
+    assertThat(strict.getKeywords(context, blob, locale).toCompletableFuture().get())
+            .containsExactly(new Keyword("Himmel", 80.0));
+    assertThat(lenient.getKeywords(context, blob, locale).toCompletableFuture().get())
+            .containsExactly(new Keyword("Himmel", 80.0), new Keyword("Wolke", 40.0));
+    // one upload and one tags request
+    verify(httpClient, times(2)).sendAsync(any(), any());
+  }
+
+  @Test
+  void analysesShareOneUpload() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    mockAnalysis("/colors", "{result:{colors:{image_colors:[{html_code:'#8caed9',percent:60.5}]}}}");
+    mockAnalysis("/croppings", "{result:{croppings:[{x1:10,y1:0,x2:209,y2:199}]}}");
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT)
+            .analyses(EnumSet.of(ImageAnalysis.Analysis.TAGS, ImageAnalysis.Analysis.COLORS, ImageAnalysis.Analysis.CROPPINGS))
+            .build());
+
+    ImageAnalysis.Result result = imaggaFeedbackHubAdapter.analyze(blob, locale).toCompletableFuture().get();
+
+    assertThat(result.getTags()).containsExactly(new Keyword("keyword", 10.0));
+    assertThat(result.getCategories()).isEmpty();
+    assertThat(result.getColors()).containsExactly(new ImageAnalysis.Color("#8caed9", 60.5));
+    assertThat(result.getCroppings()).containsExactly(new ImageAnalysis.Cropping(10, 0, 209, 199));
+    ArgumentCaptor<HttpRequest> requests = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient, times(4)).sendAsync(requests.capture(), any());
+    assertThat(requests.getAllValues()).extracting(request -> request.uri().getPath())
+            .containsExactlyInAnyOrder("/uploads", "/tags", "/colors", "/croppings");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void rejectedUploadIdOfAnalysisIsUploadedAgain() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    HttpResponse<Object> rejected = mock(HttpResponse.class);
+    when(rejected.statusCode()).thenReturn(400);
+    when(rejected.headers()).thenReturn(HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+    when(rejected.body()).thenAnswer(invocation -> body("{status:{text:" + ERROR_TEXT + "}}"));
+    HttpResponse<Object> colors = mock(HttpResponse.class);
+    when(colors.statusCode()).thenReturn(200);
+    when(colors.headers()).thenReturn(HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+    when(colors.body()).thenAnswer(invocation -> body("{result:{colors:{image_colors:[{html_code:'#8caed9',percent:60.5}]}}}"));
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + "/colors" + concatUrlParameters("image_upload_id=" + UPLOAD_ID)))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    when(httpClient.sendAsync(eq(request), any()))
+            .thenReturn(CompletableFuture.completedFuture(rejected))
+            .thenReturn(CompletableFuture.completedFuture(colors));
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT)
+            .analyses(EnumSet.of(ImageAnalysis.Analysis.TAGS, ImageAnalysis.Analysis.COLORS))
+            .build());
+
+    ImageAnalysis.Result result = imaggaFeedbackHubAdapter.analyze(blob, locale).toCompletableFuture().get();
+
+    assertThat(result.getColors()).containsExactly(new ImageAnalysis.Color("#8caed9", 60.5));
+    // upload, tags and colors, twice
+    verify(httpClient, times(6)).sendAsync(any(), any());
+  }
+
+  @Test
+  void keywordsDoNotRequestFurtherAnalyses() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT)
+            .analyses(EnumSet.of(ImageAnalysis.Analysis.TAGS, ImageAnalysis.Analysis.COLORS, ImageAnalysis.Analysis.CROPPINGS))
+            .build());
+
+    imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+
+    ArgumentCaptor<HttpRequest> requests = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient, times(2)).sendAsync(requests.capture(), any());
+    assertThat(requests.getAllValues()).extracting(request -> request.uri().getPath())
+            .containsExactly("/uploads", "/tags");
+  }
+
+  @Test
+  void rejectedPictureFailsWithoutRequest() {
+    mockUploadRequest(false, false, false);
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT).build(),
+            newCache(), null);
+
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    verify(httpClient, times(1)).sendAsync(any(), any());
+  }
+
+  @Test
+  void serverErrorIsNotRemembered() {
+    mockUploadRequest(false, false, false);
+    when(uploadIDResponse.statusCode()).thenReturn(503);
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT).maxRetries(0).build(),
+            newCache(), null);
+
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    verify(httpClient, times(2)).sendAsync(any(), any());
+  }
+
+  @Test
+  void unsupportedFileTypeIsRememberedPerPreprocessing() throws Exception {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    ByteArrayOutputStream gif = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "gif", gif);
+    when(blob.findExtension()).thenReturn(Optional.of("gif"));
+    when(blob.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(gif.toByteArray()));
+    Cache cache = newCache();
+    ImaggaFeedbackHubAdapter withoutPreprocessing = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY)
+            .minAccuracy(MIN_ACCURACY).limit(LIMIT).build(), cache, null);
+    ImaggaFeedbackHubAdapter withPreprocessing = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY)
+            .minAccuracy(MIN_ACCURACY).limit(LIMIT).maxImageEdge(100).build(), cache, null);
+
+    assertThat(errorCode(withoutPreprocessing.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.NOT_SUPPORTED_FILE_TYPE);
+    assertThat(withPreprocessing.getKeywords(context, blob, locale).toCompletableFuture().get()).containsExactly(new Keyword("keyword", 10.0));
+  }
+
+  @Test
+  void forbiddenIsNotRemembered() {
+    mockUploadRequest(false, false, false);
+    when(uploadIDResponse.statusCode()).thenReturn(403);
+    imaggaFeedbackHubAdapter = newAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT).build(),
+            newCache(), null);
+
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    assertThat(errorCode(imaggaFeedbackHubAdapter.getKeywords(context, blob, locale))).isEqualTo(ImaggaFeedbackHubErrorCode.UPLOAD_FAILED);
+    verify(httpClient, times(2)).sendAsync(any(), any());
+  }
+
+  @Test
+  void keywordStoreLookupRecordsEachCacheLookupOnce() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    List<Boolean> lookups = new ArrayList<>();
+    ImaggaMetrics metrics = new ImaggaMetrics() {
+      @Override
+      public void cacheLookup(CacheKey<?> cacheKey, boolean hit) {
+        lookups.add(hit);
+      }
+    };
+    KeywordStore keywordStore = new KeywordStore(keywordStoreDirectory, Long.MAX_VALUE);
+    try {
+      imaggaFeedbackHubAdapter = new ImaggaFeedbackHubAdapter(ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT).build(),
+              ImaggaAdapterDependencies.builder(httpClient).cache(newCache()).keywordStore(keywordStore).metrics(metrics).build());
+
+      imaggaFeedbackHubAdapter.getKeywords(context, blob, locale).toCompletableFuture().get();
+
+      // known failure, upload ID and tags, each looked up once
+      assertThat(lookups).containsExactly(false, false, false);
+    } finally {
+      keywordStore.close();
+    }
+  }
+
+  @Test
+  void sharedCacheServesOtherNodes() throws ExecutionException, InterruptedException {
+    mockUploadRequest(true, false, false);
+    mockKeyWordsRequest(true, false, false);
+    // A single thread, so that the lookups see the preceding writes.
+    SharedCacheTier sharedCache = new SharedCacheTier(new FileSystemSharedCache(sharedCacheDirectory), 1);
+    ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(URL, BASE_AUTH_KEY).minAccuracy(MIN_ACCURACY).limit(LIMIT).build();
+    try {
+      List<Keyword> keywords = newAdapter(options, sharedCache).getKeywords(context, blob, locale).toCompletableFuture().get();
+      List<Keyword> otherNodeKeywords = newAdapter(options, sharedCache).getKeywords(context, blob, locale).toCompletableFuture().get();
+
+      assertThat(otherNodeKeywords).isEqualTo(keywords).containsExactly(new Keyword("keyword", 10.0));
+      // upload and tags of the first node only
+      verify(httpClient, times(2)).sendAsync(any(), any());
+    } finally {
+      sharedCache.shutdown();
+    }
+  }
 
   private void mockKeyWordsRequest(boolean success, boolean responseJsonMalformed, boolean loginFailed) {
     String idP = "image_upload_id=" + UPLOAD_ID;
@@ -188,6 +563,7 @@ class ImaggaFeedbackHubAdapterTest {
     String thresholdP = "threshold=" + MIN_ACCURACY + ".0";
     HttpRequest request = HttpRequest.newBuilder()
             .uri(URI.create(URL + "/tags" + concatUrlParameters(idP, languageP, limitP, thresholdP)))
+            .header("Accept-Encoding", "gzip")
             .header("Authorization", "Basic " + BASE_AUTH_KEY)
             .GET()
             .build();
@@ -197,16 +573,16 @@ class ImaggaFeedbackHubAdapterTest {
     if (success) {
       when(keyWordsResponse.statusCode()).thenReturn(200);
       if (responseJsonMalformed) {
-        when(keyWordsResponse.body()).thenReturn("malformed");
+        when(keyWordsResponse.body()).thenAnswer(invocation -> body("malformed"));
       } else {
-        when(keyWordsResponse.body()).thenReturn("{result:{tags:[{confidence:10,tag:{de:keyword}}]}}");
+        when(keyWordsResponse.body()).thenAnswer(invocation -> body("{result:{tags:[{confidence:10,tag:{de:keyword}}]}}"));
       }
     } else {
       if(loginFailed){
         when(keyWordsResponse.statusCode()).thenReturn(401);
       } else {
         when(keyWordsResponse.statusCode()).thenReturn(400);
-        when(keyWordsResponse.body()).thenReturn("{status : {text:" + ERROR_TEXT + "}}");
+        when(keyWordsResponse.body()).thenAnswer(invocation -> body("{status : {text:" + ERROR_TEXT + "}}"));
       }
     }
   }
@@ -219,21 +595,65 @@ class ImaggaFeedbackHubAdapterTest {
     if (success) {
       when(uploadIDResponse.statusCode()).thenReturn(200);
       if (responseJsonMalformed) {
-        when(uploadIDResponse.body()).thenReturn("malformed");
+        when(uploadIDResponse.body()).thenAnswer(invocation -> body("malformed"));
       } else {
-        when(uploadIDResponse.body()).thenReturn("{result:{upload_id:" + UPLOAD_ID + "}}");
+        when(uploadIDResponse.body()).thenAnswer(invocation -> body("{result:{upload_id:" + UPLOAD_ID + "}}"));
       }
     } else {
       if(loginFailed){
         when(uploadIDResponse.statusCode()).thenReturn(401);
       }else {
         when(uploadIDResponse.statusCode()).thenReturn(400);
-        when(uploadIDResponse.body()).thenReturn("{status : {text:" + ERROR_TEXT + "}}");
+        when(uploadIDResponse.body()).thenAnswer(invocation -> body("{status : {text:" + ERROR_TEXT + "}}"));
       }
     }
 
   }
 
+  @SuppressWarnings("unchecked")
+  private void mockAnalysis(String path, String json) {
+    HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(URL + path + concatUrlParameters("image_upload_id=" + UPLOAD_ID)))
+            .header("Accept-Encoding", "gzip")
+            .header("Authorization", "Basic " + BASE_AUTH_KEY)
+            .GET()
+            .build();
+    HttpResponse<Object> response = mock(HttpResponse.class);
+    when(response.statusCode()).thenReturn(200);
+    when(response.headers()).thenReturn(HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+    when(response.body()).thenAnswer(invocation -> body(json));
+    when(httpClient.sendAsync(eq(request), any())).thenReturn(CompletableFuture.completedFuture(response));
+  }
+
+  private static InputStream body(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private ImaggaFeedbackHubAdapter newAdapter(ImaggaAdapterOptions options) {
+    return newAdapter(options, null);
+  }
+
+  private ImaggaFeedbackHubAdapter newAdapter(ImaggaAdapterOptions options, @Nullable SharedCacheTier sharedCache) {
+    return newAdapter(options, null, sharedCache);
+  }
+
+  private ImaggaFeedbackHubAdapter newAdapter(ImaggaAdapterOptions options, @Nullable Cache cache, @Nullable SharedCacheTier sharedCache) {
+    return new ImaggaFeedbackHubAdapter(options, ImaggaAdapterDependencies.builder(httpClient)
+            .cache(cache)
+            .sharedCache(sharedCache)
+            .build());
+  }
+
+  @Nullable
+  private static ImaggaFeedbackHubErrorCode errorCode(CompletionStage<?> stage) {
+    try {
+      stage.toCompletableFuture().join();
+      return null;
+    } catch (CompletionException e) {
+      return (ImaggaFeedbackHubErrorCode) ((FeedbackHubException) e.getCause()).getErrorCode();
+    }
+  }
+
   private static String concatUrlParameters(String... args) {
     String params = Stream.of(args).filter(s -> s != null && !s.isEmpty()).collect(Collectors.joining("&"));
     return params.isEmpty() ? "" : "?" + params;
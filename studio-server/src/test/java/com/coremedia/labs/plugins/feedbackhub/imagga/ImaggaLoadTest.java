@@ -0,0 +1,111 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.FeedbackContext;
+import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+import static com.coremedia.labs.plugins.feedbackhub.imagga.ImaggaTestFixtures.newBlob;
+import static com.coremedia.labs.plugins.feedbackhub.imagga.ImaggaTestFixtures.newCache;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the adapter against {@link FakeImagga}.
+ * <p>
+ * The load test is skipped by default.  Run it with
+ * <pre>
+ * mvn test -Dtest=ImaggaLoadTest -Dimagga.loadtest=true -Dimagga.loadtest.editors=50
+ * </pre>
+ * and further imagga.loadtest.* properties, see {@link #load()}.
+ */
+class ImaggaLoadTest {
+  private static final Logger LOG = LoggerFactory.getLogger(ImaggaLoadTest.class);
+
+  @Test
+  void keywordsFromFakeImagga() throws Exception {
+    try (FakeImagga imagga = FakeImagga.builder().tags(30).start()) {
+      ImaggaFeedbackHubAdapter adapter = newAdapter(ImaggaAdapterOptions.builder(imagga.getUrl(), "key").limit(10).build(),
+              newCache(), new RequestGovernor(0, 0, 100));
+      Blob blob = newBlob("etag");
+
+      List<Keyword> keywords = adapter.getKeywords(mock(FeedbackContext.class), blob, Locale.GERMAN).toCompletableFuture().get();
+      adapter.getKeywords(mock(FeedbackContext.class), blob, Locale.GERMAN).toCompletableFuture().get();
+
+      assertThat(keywords).hasSize(10);
+      assertThat(keywords.get(0)).isEqualTo(new Keyword("landscape (de)", 100.0));
+      assertThat(imagga.getUploads()).isEqualTo(1);
+      assertThat(imagga.getTagsRequests()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  void harnessMeasuresRequests() throws Exception {
+    try (FakeImagga imagga = FakeImagga.builder().start()) {
+      ImaggaFeedbackHubAdapter adapter = newAdapter(ImaggaAdapterOptions.builder(imagga.getUrl(), "key").build(),
+              newCache(), new RequestGovernor(0, 4, 100));
+
+      LoadTestHarness.Result result = new LoadTestHarness(adapter, 4, 10, 0.5).run();
+
+      assertThat(result.getRequests()).isEqualTo(40);
+      assertThat(result.getFailures()).isZero();
+      assertThat(result.getPercentile(0.99)).isGreaterThanOrEqualTo(result.getPercentile(0.5));
+    }
+  }
+
+  /**
+   * Properties, all prefixed with imagga.loadtest.:
+   * editors, requests (per editor), hitRate, latency (ms), errorRate,
+   * tooManyRequestsRate, tags, maxRequestsPerSecond, maxConcurrentRequests,
+   * maxRetries
+   */
+  @Test
+  @EnabledIfSystemProperty(named = "imagga.loadtest", matches = "true")
+  void load() throws Exception {
+    FakeImagga.Builder fake = FakeImagga.builder()
+            .latency(Duration.ofMillis(Long.getLong("imagga.loadtest.latency", 300)))
+            .errorRate(getDouble("imagga.loadtest.errorRate", 0))
+            .tooManyRequestsRate(getDouble("imagga.loadtest.tooManyRequestsRate", 0))
+            .tags(Integer.getInteger("imagga.loadtest.tags", 100));
+    try (FakeImagga imagga = fake.start()) {
+      ImaggaAdapterOptions options = ImaggaAdapterOptions.builder(imagga.getUrl(), "key")
+              .maxRetries(Integer.getInteger("imagga.loadtest.maxRetries", 2))
+              .build();
+      RequestGovernor requestGovernor = new RequestGovernor(Integer.getInteger("imagga.loadtest.maxRequestsPerSecond", 0),
+              Integer.getInteger("imagga.loadtest.maxConcurrentRequests", 0), 10_000);
+      LoadTestHarness harness = new LoadTestHarness(newAdapter(options, newCache(), requestGovernor),
+              Integer.getInteger("imagga.loadtest.editors", 20),
+              Integer.getInteger("imagga.loadtest.requests", 50),
+              getDouble("imagga.loadtest.hitRate", 0.5));
+
+      LoadTestHarness.Result result = harness.run();
+
+      LOG.info("Load test: {}, {} uploads, {} tags requests, {} rejections", result,
+              imagga.getUploads(), imagga.getTagsRequests(), imagga.getRejections());
+    }
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private static ImaggaFeedbackHubAdapter newAdapter(ImaggaAdapterOptions options, Cache cache, RequestGovernor requestGovernor) {
+    return new ImaggaFeedbackHubAdapter(options, ImaggaAdapterDependencies.builder(HttpClient.newHttpClient())
+            .cache(cache)
+            .requestGovernor(requestGovernor)
+            .build());
+  }
+
+  private static double getDouble(String property, double defaultValue) {
+    String value = System.getProperty(property);
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+}
@@ -0,0 +1,122 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.keywords.Keyword;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ImaggaResponseParserTest {
+
+  private static final String TAGS = "{\"result\":{\"tags\":[" +
+          "{\"confidence\":42.5,\"tag\":{\"de\":\"Himmel\",\"en\":\"sky\",\"fr\":\"ciel\"}}," +
+          "{\"confidence\":12.0,\"tag\":{\"de\":\"Wolke\",\"en\":\"cloud\",\"fr\":\"nuage\"}}" +
+          "]},\"status\":{\"text\":\"\",\"type\":\"success\"}}";
+
+  @Test
+  void parseTagsForSeveralLanguages() throws IOException {
+    Map<String, KeywordList> keywords = ImaggaResponseParser.parseTags(new StringReader(TAGS), List.of("en", "de"));
+
+    assertThat(keywords).containsOnlyKeys("en", "de");
+    assertThat(keywords.get("en").toKeywords()).containsExactly(new Keyword("sky", 42.5), new Keyword("cloud", 12.0));
+    assertThat(keywords.get("de").toKeywords()).containsExactly(new Keyword("Himmel", 42.5), new Keyword("Wolke", 12.0));
+  }
+
+  @Test
+  void missingFirstLanguageIsAnError() {
+    assertThatThrownBy(() -> ImaggaResponseParser.parseTags(new StringReader(TAGS), List.of("it")))
+            .isInstanceOf(JsonParseException.class);
+  }
+
+  @Test
+  void missingFurtherLanguageIsSkipped() throws IOException {
+    Map<String, KeywordList> keywords = ImaggaResponseParser.parseTags(new StringReader(TAGS), List.of("en", "it", "de"));
+
+    assertThat(keywords).containsOnlyKeys("en", "de");
+    assertThat(keywords.get("en").toKeywords()).containsExactly(new Keyword("sky", 42.5), new Keyword("cloud", 12.0));
+  }
+
+  @Test
+  void parseCategories() throws IOException {
+    String json = "{\"result\":{\"categories\":[" +
+            "{\"confidence\":99.5,\"name\":{\"en\":\"nature landscape\"}}," +
+            "{\"confidence\":0.5,\"name\":{\"en\":\"pets animals\"}}" +
+            "]},\"status\":{\"text\":\"\",\"type\":\"success\"}}";
+
+    assertThat(ImaggaResponseParser.parseCategories(new StringReader(json), List.of("en")).get("en").toKeywords())
+            .containsExactly(new Keyword("nature landscape", 99.5), new Keyword("pets animals", 0.5));
+  }
+
+  @Test
+  void parseColorsAndCroppings() throws IOException {
+    String colors = "{\"result\":{\"colors\":{" +
+            "\"background_colors\":[{\"html_code\":\"#000000\",\"percent\":80.0}]," +
+            "\"image_colors\":[{\"closest_palette_color\":\"light blue\",\"html_code\":\"#8caed9\",\"percent\":60.5,\"r\":140}," +
+            "{\"html_code\":\"#2d4b1e\",\"percent\":39.5}]}}}";
+    String croppings = "{\"result\":{\"croppings\":[{\"target_height\":100,\"target_width\":100,\"x1\":10,\"x2\":209,\"y1\":0,\"y2\":199}]}}";
+
+    assertThat(ImaggaResponseParser.parseColors(new StringReader(colors)))
+            .containsExactly(new ImageAnalysis.Color("#8caed9", 60.5), new ImageAnalysis.Color("#2d4b1e", 39.5));
+    assertThat(ImaggaResponseParser.parseCroppings(new StringReader(croppings)))
+            .containsExactly(new ImageAnalysis.Cropping(10, 0, 209, 199));
+    assertThat(ImaggaResponseParser.parseCroppings(new StringReader("{\"status\":{}}"))).isEmpty();
+  }
+
+  @Test
+  void parseUploadIdAndErrorMessage() throws IOException {
+    assertThat(ImaggaResponseParser.parseUploadId(new StringReader("{\"result\":{\"upload_id\":\"i05e1\"}}"))).isEqualTo("i05e1");
+    assertThat(ImaggaResponseParser.parseErrorMessage(new StringReader("{\"status\":{\"text\":\"Bad request\"}}"))).isEqualTo("Bad request");
+    assertThat(ImaggaResponseParser.parseErrorMessage(new StringReader("{\"result\":{}}"))).isEmpty();
+  }
+
+  @Test
+  void gzippedBody() throws IOException {
+    HttpResponse<InputStream> response = response(gzip(TAGS), "gzip");
+
+    try (InputStream body = ImaggaResponseParser.openBody(response, ImaggaResponseParser.MAX_RESPONSE_BYTES)) {
+      assertThat(ImaggaResponseParser.parseTags(ImaggaResponseParser.asReader(body), List.of("fr")).get("fr").toKeywords())
+              .containsExactly(new Keyword("ciel", 42.5), new Keyword("nuage", 12.0));
+    }
+  }
+
+  @Test
+  void bodyIsCapped() throws IOException {
+    HttpResponse<InputStream> response = response(TAGS.getBytes(StandardCharsets.UTF_8), null);
+
+    try (InputStream body = ImaggaResponseParser.openBody(response, 10)) {
+      assertThatThrownBy(body::readAllBytes).isInstanceOf(IOException.class);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HttpResponse<InputStream> response(byte[] body, String contentEncoding) {
+    HttpResponse<InputStream> response = mock(HttpResponse.class);
+    Map<String, List<String>> headers = contentEncoding != null ? Map.of("Content-Encoding", List.of(contentEncoding)) : Map.of();
+    when(response.headers()).thenReturn(HttpHeaders.of(headers, (name, value) -> true));
+    when(response.body()).thenReturn(new ByteArrayInputStream(body));
+    return response;
+  }
+
+  private static byte[] gzip(String value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+}
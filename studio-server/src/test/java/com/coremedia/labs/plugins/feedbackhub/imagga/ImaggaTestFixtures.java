@@ -0,0 +1,39 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.cache.Cache;
+import com.coremedia.feedbackhub.adapter.Blob;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Caches and blobs for tests.  Adapters are created with
+ * {@link ImaggaAdapterDependencies#builder}, whose defaults suit tests.
+ */
+final class ImaggaTestFixtures {
+  private ImaggaTestFixtures() {
+  }
+
+  /**
+   * A cache with sized Imagga cache classes, so that the entries are kept.
+   */
+  static Cache newCache() {
+    Cache cache = new Cache("imagga-test");
+    ImaggaCacheClasses.configure(cache, 16 << 20, 256 << 20);
+    return cache;
+  }
+
+  /**
+   * A JPEG blob whose content is its eTag.
+   */
+  static Blob newBlob(String eTag) {
+    Blob blob = mock(Blob.class);
+    when(blob.getETag()).thenReturn(eTag);
+    when(blob.findExtension()).thenReturn(Optional.of("jpg"));
+    when(blob.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(eTag.getBytes()));
+    return blob;
+  }
+}
@@ -0,0 +1,27 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordListTest {
+  private static final KeywordList KEYWORDS = new KeywordList(new String[]{"sky", "cloud", "blue", "air"}, new double[]{80.0, 42.5, 30.0, 12.0});
+
+  @Test
+  void headAppliesThresholdAndLimit() {
+    assertThat(KEYWORDS.head(-1, 30)).isEqualTo(new KeywordList(new String[]{"sky", "cloud", "blue"}, new double[]{80.0, 42.5, 30.0}));
+    assertThat(KEYWORDS.head(2, 0)).isEqualTo(new KeywordList(new String[]{"sky", "cloud"}, new double[]{80.0, 42.5}));
+    assertThat(KEYWORDS.head(2, 50)).isEqualTo(new KeywordList(new String[]{"sky"}, new double[]{80.0}));
+    assertThat(KEYWORDS.head(0, 0).size()).isZero();
+    assertThat(KEYWORDS.head(-1, 0)).isSameAs(KEYWORDS);
+  }
+
+  @Test
+  void sortedByConfidence() {
+    KeywordList unsorted = new KeywordList(new String[]{"cloud", "sky", "air", "blue"}, new double[]{42.5, 80.0, 12.0, 42.5});
+
+    assertThat(unsorted.sortedByConfidence())
+            .isEqualTo(new KeywordList(new String[]{"sky", "cloud", "blue", "air"}, new double[]{80.0, 42.5, 42.5, 12.0}));
+    assertThat(KEYWORDS.sortedByConfidence()).isSameAs(KEYWORDS);
+  }
+}
@@ -0,0 +1,76 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordStoreTest {
+
+  private static final KeywordStore.Key KEY = new KeywordStore.Key("etag", "http://test", "en", -1, 30);
+  private static final KeywordList KEYWORDS = new KeywordList(new String[]{"sky", "cloud"}, new double[]{42.5, 12.0});
+  private static final KeywordList OTHER_KEYWORDS = new KeywordList(new String[]{"sea", "beach"}, new double[]{40.0, 10.0});
+  // the header and two records of KEY with two keywords
+  private static final long TWO_RECORDS = 4 + 2 * 63;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void keywordsSurviveRestart() {
+    KeywordStore store = new KeywordStore(directory, Long.MAX_VALUE);
+    store.getLoaded().join();
+    assertThat(store.find(KEY)).isNull();
+    store.store(KEY, KEYWORDS).join();
+    assertThat(store.find(KEY)).isEqualTo(KEYWORDS);
+    store.close();
+
+    KeywordStore restarted = new KeywordStore(directory, Long.MAX_VALUE);
+    restarted.getLoaded().join();
+    assertThat(restarted.find(KEY)).isEqualTo(KEYWORDS);
+    assertThat(restarted.find(new KeywordStore.Key("etag", "http://test", "de", -1, 30))).isNull();
+    restarted.close();
+  }
+
+  @Test
+  void truncatedRecordIsCutOff() throws IOException {
+    KeywordStore store = new KeywordStore(directory, Long.MAX_VALUE);
+    store.getLoaded().join();
+    store.store(KEY, KEYWORDS);
+    store.close();
+    Path segmentFile;
+    try (var files = Files.list(directory)) {
+      segmentFile = files.findFirst().orElseThrow();
+    }
+    Files.write(segmentFile, new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+    KeywordStore restarted = new KeywordStore(directory, Long.MAX_VALUE);
+    restarted.getLoaded().join();
+    assertThat(restarted.find(KEY)).isEqualTo(KEYWORDS);
+    restarted.close();
+  }
+
+  @Test
+  void fullStoreIsCompacted() throws IOException {
+    KeywordStore store = new KeywordStore(directory, TWO_RECORDS);
+    store.getLoaded().join();
+    store.store(KEY, KEYWORDS).join();
+    store.store(KEY, OTHER_KEYWORDS).join();
+    store.store(KEY, KEYWORDS).join();
+    assertThat(store.find(KEY)).isEqualTo(KEYWORDS);
+    store.close();
+    try (var files = Files.list(directory)) {
+      assertThat(files.findFirst().orElseThrow()).hasSize(TWO_RECORDS);
+    }
+
+    KeywordStore restarted = new KeywordStore(directory, TWO_RECORDS);
+    restarted.getLoaded().join();
+    assertThat(restarted.find(KEY)).isEqualTo(KEYWORDS);
+    restarted.close();
+  }
+}
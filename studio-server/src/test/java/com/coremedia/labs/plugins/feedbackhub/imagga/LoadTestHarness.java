@@ -0,0 +1,140 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.Blob;
+import com.coremedia.feedbackhub.adapter.FeedbackContext;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives an adapter from simulated editors and measures throughput and
+ * latency.
+ * <p>
+ * Each editor requests keywords for a sequence of images, one after the
+ * other.  With the given hit rate, an editor requests an image that has
+ * been requested before, otherwise a new one, so that the hit rate
+ * controls the share of cached results.
+ */
+class LoadTestHarness {
+  private final ImaggaFeedbackHubAdapter adapter;
+  private final int editors;
+  private final int requestsPerEditor;
+  private final double hitRate;
+
+  private final AtomicInteger images = new AtomicInteger();
+
+  LoadTestHarness(ImaggaFeedbackHubAdapter adapter, int editors, int requestsPerEditor, double hitRate) {
+    this.adapter = adapter;
+    this.editors = editors;
+    this.requestsPerEditor = requestsPerEditor;
+    this.hitRate = hitRate;
+  }
+
+  Result run() throws InterruptedException {
+    FeedbackContext context = mock(FeedbackContext.class);
+    Blob[] blobs = new Blob[editors * requestsPerEditor];
+    for (int i = 0; i < blobs.length; i++) {
+      blobs[i] = ImaggaTestFixtures.newBlob("load-test-" + i);
+    }
+    long[][] latencies = new long[editors][requestsPerEditor];
+    AtomicInteger failures = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(editors);
+    ExecutorService executor = Executors.newFixedThreadPool(editors);
+    try {
+      for (int editor = 0; editor < editors; editor++) {
+        long[] editorLatencies = latencies[editor];
+        executor.execute(() -> {
+          try {
+            start.await();
+            for (int i = 0; i < requestsPerEditor; i++) {
+              Blob blob = blobs[nextImage()];
+              long requestStart = System.nanoTime();
+              try {
+                adapter.getKeywords(context, blob, Locale.ENGLISH).toCompletableFuture().get();
+              } catch (Exception e) {
+                failures.incrementAndGet();
+              }
+              editorLatencies[i] = System.nanoTime() - requestStart;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        });
+      }
+      long startTime = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = System.nanoTime() - startTime;
+      long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+      return new Result(all, failures.get(), Duration.ofNanos(elapsed));
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+
+  // --- internal ---------------------------------------------------
+
+  private int nextImage() {
+    int requested = images.get();
+    if (requested > 0 && ThreadLocalRandom.current().nextDouble() < hitRate) {
+      return ThreadLocalRandom.current().nextInt(requested);
+    }
+    return images.getAndIncrement();
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  static class Result {
+    private final long[] sortedLatencies;
+    private final int failures;
+    private final Duration elapsed;
+
+    Result(long[] sortedLatencies, int failures, Duration elapsed) {
+      this.sortedLatencies = sortedLatencies;
+      this.failures = failures;
+      this.elapsed = elapsed;
+    }
+
+    int getRequests() {
+      return sortedLatencies.length;
+    }
+
+    int getFailures() {
+      return failures;
+    }
+
+    double getThroughput() {
+      return sortedLatencies.length / (elapsed.toNanos() / 1e9);
+    }
+
+    Duration getPercentile(double percentile) {
+      if (sortedLatencies.length == 0) {
+        return Duration.ZERO;
+      }
+      int index = Math.min(sortedLatencies.length - 1, (int) Math.ceil(percentile * sortedLatencies.length) - 1);
+      return Duration.ofNanos(sortedLatencies[Math.max(0, index)]);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d requests, %d failures in %d ms: %.1f requests/s, p50 %.1f ms, p99 %.1f ms",
+              getRequests(), failures, elapsed.toMillis(), getThroughput(),
+              getPercentile(0.5).toNanos() / 1e6, getPercentile(0.99).toNanos() / 1e6);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+class MicrometerImaggaMetricsTest {
+
+  @Mock
+  HttpResponse<InputStream> response;
+
+  private SimpleMeterRegistry registry;
+  private MicrometerImaggaMetrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    registry = new SimpleMeterRegistry();
+    metrics = new MicrometerImaggaMetrics(registry);
+  }
+
+  @Test
+  void requestsAreTimedByPhaseAndStatus() {
+    when(response.statusCode()).thenReturn(200);
+
+    long start = metrics.requestStarted();
+    assertThat(registry.get("imagga.requests.active").gauge().value()).isEqualTo(1);
+    metrics.requestFinished(ImaggaMetrics.TAGS, start, response, null);
+    metrics.requestFinished(ImaggaMetrics.UPLOAD, metrics.requestStarted(), null, new IOException("connection reset"));
+
+    assertThat(registry.get("imagga.requests.active").gauge().value()).isEqualTo(0);
+    assertThat(registry.get("imagga.request").tag("phase", "tags").tag("status", "200").timer().count()).isEqualTo(1);
+    assertThat(registry.get("imagga.request").tag("phase", "upload").tag("status", "IOException").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void responseBytesAreCountedOnClose() throws IOException {
+    try (InputStream body = metrics.countResponseBytes(ImaggaMetrics.TAGS, new ByteArrayInputStream(new byte[42]))) {
+      assertThat(body.readAllBytes()).hasSize(42);
+    }
+
+    assertThat(registry.get("imagga.response.size").tag("phase", "tags").summary().totalAmount()).isEqualTo(42);
+  }
+
+  @Test
+  void coalescedRequestsAreMonitored() {
+    InFlightRequests inFlightRequests = new InFlightRequests();
+    metrics.monitor(inFlightRequests);
+
+    assertThat(registry.get("imagga.requests.coalesced").gauge().value()).isEqualTo(0);
+  }
+}
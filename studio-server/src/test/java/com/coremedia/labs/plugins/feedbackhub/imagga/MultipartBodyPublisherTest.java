@@ -0,0 +1,74 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultipartBodyPublisherTest {
+
+  private static final String EXPECTED_BODY = "--ImageUpload\r\n" +
+          "Content-Disposition: form-data; name=\"image\";filename=\"etag.jpg\"\r\n" +
+          "\r\n" +
+          "image data" +
+          "\r\n\r\nImageUpload--";
+
+  @Test
+  void byteArrayHasExactLength() throws ExecutionException, InterruptedException {
+    MultipartBodyPublisher publisher = MultipartBodyPublisher.ofByteArray("etag.jpg", "image data".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(publisher.contentLength()).isEqualTo(EXPECTED_BODY.length());
+    assertThat(collect(publisher)).isEqualTo(EXPECTED_BODY);
+  }
+
+  @Test
+  void inputStreamIsReopenedForEachSubscription() throws ExecutionException, InterruptedException {
+    AtomicInteger opened = new AtomicInteger();
+    MultipartBodyPublisher publisher = MultipartBodyPublisher.ofInputStream("etag.jpg", () -> {
+      opened.incrementAndGet();
+      return new ByteArrayInputStream("image data".getBytes(StandardCharsets.UTF_8));
+    });
+
+    assertThat(publisher.contentLength()).isEqualTo(-1);
+    assertThat(collect(publisher)).isEqualTo(EXPECTED_BODY);
+    assertThat(collect(publisher)).isEqualTo(EXPECTED_BODY);
+    assertThat(opened).hasValue(2);
+  }
+
+  private static String collect(Flow.Publisher<ByteBuffer> publisher) throws ExecutionException, InterruptedException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompletableFuture<String> result = new CompletableFuture<>();
+    publisher.subscribe(new Flow.Subscriber<>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(ByteBuffer item) {
+        byte[] chunk = new byte[item.remaining()];
+        item.get(chunk);
+        bytes.write(chunk, 0, chunk.length);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        result.complete(bytes.toString(StandardCharsets.UTF_8));
+      }
+    });
+    return result.get();
+  }
+}
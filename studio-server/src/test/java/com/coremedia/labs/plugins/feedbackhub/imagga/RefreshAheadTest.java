@@ -0,0 +1,87 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshAheadTest {
+  private static final String KEY = "key";
+
+  @Test
+  void popularEntryCloseToExpiryIsRefreshed() throws InterruptedException {
+    RefreshAhead refreshAhead = new RefreshAhead(Duration.ofMinutes(1));
+    refreshAhead.cached(KEY, Duration.ofSeconds(1));
+    CountDownLatch refreshed = new CountDownLatch(1);
+
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed after the first hit"))).isFalse();
+    assertThat(refreshAhead.hit(KEY, () -> {
+      refreshed.countDown();
+      return CompletableFuture.completedFuture(null);
+    })).isTrue();
+    // only once
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed twice"))).isFalse();
+
+    assertThat(refreshed.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void entryFarFromExpiryIsNotRefreshed() {
+    RefreshAhead refreshAhead = new RefreshAhead(Duration.ofMinutes(1));
+    refreshAhead.cached(KEY, Duration.ofHours(23));
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(refreshAhead.hit(KEY, () -> fail("refreshed"))).isFalse();
+    }
+  }
+
+  @Test
+  void unknownEntryIsNotRefreshed() {
+    RefreshAhead refreshAhead = new RefreshAhead(Duration.ofMinutes(1));
+
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed"))).isFalse();
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed"))).isFalse();
+  }
+
+  @Test
+  void disabledRefreshAheadDoesNothing() {
+    RefreshAhead refreshAhead = new RefreshAhead(Duration.ZERO);
+    refreshAhead.cached(KEY, Duration.ofSeconds(1));
+
+    assertThat(refreshAhead.isEnabled()).isFalse();
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed"))).isFalse();
+    assertThat(refreshAhead.hit(KEY, () -> fail("refreshed"))).isFalse();
+  }
+
+  @Test
+  void failedRefreshIsRetriedOnALaterHit() throws InterruptedException {
+    RefreshAhead refreshAhead = new RefreshAhead(Duration.ofMinutes(1));
+    refreshAhead.cached(KEY, Duration.ofSeconds(10));
+    CountDownLatch failed = new CountDownLatch(1);
+    refreshAhead.hit(KEY, () -> fail("refreshed after the first hit"));
+    refreshAhead.hit(KEY, () -> {
+      CompletableFuture<Void> result = CompletableFuture.failedFuture(new IOException("connection reset"));
+      failed.countDown();
+      return result;
+    });
+    assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // The failure is handled right after the refresh has been started.
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    boolean retried = false;
+    while (!retried && System.nanoTime() < deadline) {
+      retried = refreshAhead.hit(KEY, () -> CompletableFuture.completedFuture(null));
+      Thread.sleep(10);
+    }
+    assertThat(retried).isTrue();
+  }
+
+  private static CompletableFuture<Void> fail(String message) {
+    throw new AssertionError(message);
+  }
+}
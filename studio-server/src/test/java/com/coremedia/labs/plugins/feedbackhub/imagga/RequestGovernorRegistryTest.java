@@ -0,0 +1,27 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestGovernorRegistryTest {
+
+  private final RequestGovernorRegistry registry = new RequestGovernorRegistry();
+
+  @Test
+  void keyIsLimitedByOneGovernor() {
+    RequestGovernor first = registry.getGovernor(ImaggaAdapterOptions.builder("http://test", "key").maxRequestsPerSecond(2).build());
+    RequestGovernor second = registry.getGovernor(ImaggaAdapterOptions.builder("http://test", "key").maxRequestsPerSecond(10).build());
+
+    assertThat(second).isSameAs(first);
+    assertThat(second.hasLimits(2, 0, 100)).isTrue();
+  }
+
+  @Test
+  void keysHaveTheirOwnGovernors() {
+    RequestGovernor first = registry.getGovernor(ImaggaAdapterOptions.builder("http://test", "key").build());
+    RequestGovernor second = registry.getGovernor(ImaggaAdapterOptions.builder("http://test", "other").build());
+
+    assertThat(second).isNotSameAs(first);
+  }
+}
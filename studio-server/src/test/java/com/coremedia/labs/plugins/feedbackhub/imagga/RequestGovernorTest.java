@@ -0,0 +1,98 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import com.coremedia.feedbackhub.adapter.FeedbackHubException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestGovernorTest {
+  private static final HttpRequest REQUEST = HttpRequest.newBuilder().uri(URI.create("http://test/tags")).build();
+
+  @Mock
+  HttpClient httpClient;
+
+  @Mock
+  HttpResponse<InputStream> okResponse;
+
+  @Mock
+  HttpResponse<InputStream> rejectedResponse;
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(okResponse.statusCode()).thenReturn(200);
+    when(rejectedResponse.statusCode()).thenReturn(429);
+    when(rejectedResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Retry-After", List.of("0")), (name, value) -> true));
+  }
+
+  @Test
+  void concurrencyLimit() {
+    CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+    when(httpClient.sendAsync(any(), any(HttpResponse.BodyHandler.class))).thenReturn(pending);
+    RequestGovernor governor = new RequestGovernor(0, 1, 10);
+
+    governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream());
+    governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream());
+    verify(httpClient, times(1)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+    assertThat(governor.getQueueLength()).isEqualTo(1);
+
+    pending.complete(okResponse);
+    verify(httpClient, times(2)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+    assertThat(governor.getQueueLength()).isZero();
+  }
+
+  @Test
+  void fullQueueFailsImmediately() {
+    when(httpClient.sendAsync(any(), any(HttpResponse.BodyHandler.class))).thenReturn(new CompletableFuture<>());
+    RequestGovernor governor = new RequestGovernor(0, 1, 1);
+
+    governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream());
+    governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream());
+    CompletableFuture<HttpResponse<InputStream>> rejected = governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream());
+
+    assertThatThrownBy(rejected::join).hasCauseInstanceOf(FeedbackHubException.class);
+  }
+
+  @Test
+  void rejectedRequestIsSentAgain() throws InterruptedException, ExecutionException, TimeoutException {
+    when(httpClient.sendAsync(any(), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(rejectedResponse))
+            .thenReturn(CompletableFuture.completedFuture(okResponse));
+    RequestGovernor governor = new RequestGovernor(0, 0, 10);
+
+    HttpResponse<InputStream> response = governor.send(httpClient, REQUEST, HttpResponse.BodyHandlers.ofInputStream()).get(5, TimeUnit.SECONDS);
+    assertThat(response).isSameAs(okResponse);
+    verify(httpClient, times(2)).sendAsync(any(), any(HttpResponse.BodyHandler.class));
+  }
+
+  @Test
+  void retryAfter() {
+    when(rejectedResponse.headers()).thenReturn(HttpHeaders.of(Map.of("Retry-After", List.of("7")), (name, value) -> true));
+    assertThat(RequestGovernor.getRetryAfter(rejectedResponse)).isEqualTo(Duration.ofSeconds(7));
+
+    when(rejectedResponse.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+    assertThat(RequestGovernor.getRetryAfter(rejectedResponse)).isEqualTo(Duration.ofSeconds(1));
+  }
+}
@@ -0,0 +1,87 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+class RetryPolicyTest {
+
+  @Mock
+  HttpResponse<InputStream> okResponse;
+
+  @Mock
+  HttpResponse<InputStream> serverErrorResponse;
+
+  @Mock
+  HttpResponse<InputStream> badRequestResponse;
+
+  private final RetryPolicy retryPolicy = new RetryPolicy(2, Duration.ofMillis(10), Duration.ofSeconds(10));
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(okResponse.statusCode()).thenReturn(200);
+    when(serverErrorResponse.statusCode()).thenReturn(503);
+    when(badRequestResponse.statusCode()).thenReturn(400);
+  }
+
+  @Test
+  void serverErrorIsRetried() throws InterruptedException, ExecutionException, TimeoutException {
+    AtomicInteger attempts = new AtomicInteger();
+    HttpResponse<InputStream> response = retryPolicy.execute(() -> CompletableFuture.completedFuture(
+            attempts.incrementAndGet() == 1 ? serverErrorResponse : okResponse)).get(5, TimeUnit.SECONDS);
+
+    assertThat(response).isSameAs(okResponse);
+    assertThat(attempts).hasValue(2);
+  }
+
+  @Test
+  void ioExceptionIsRetried() throws InterruptedException, ExecutionException, TimeoutException {
+    AtomicInteger attempts = new AtomicInteger();
+    HttpResponse<InputStream> response = retryPolicy.execute(() -> attempts.incrementAndGet() == 1
+            ? CompletableFuture.failedFuture(new IOException("connection reset"))
+            : CompletableFuture.completedFuture(okResponse)).get(5, TimeUnit.SECONDS);
+
+    assertThat(response).isSameAs(okResponse);
+    assertThat(attempts).hasValue(2);
+  }
+
+  @Test
+  void clientErrorIsFinal() throws InterruptedException, ExecutionException, TimeoutException {
+    AtomicInteger attempts = new AtomicInteger();
+    HttpResponse<InputStream> response = retryPolicy.execute(() -> {
+      attempts.incrementAndGet();
+      return CompletableFuture.completedFuture(badRequestResponse);
+    }).get(5, TimeUnit.SECONDS);
+
+    assertThat(response).isSameAs(badRequestResponse);
+    assertThat(attempts).hasValue(1);
+  }
+
+  @Test
+  void retriesAreLimited() {
+    AtomicInteger attempts = new AtomicInteger();
+    CompletableFuture<HttpResponse<InputStream>> result = retryPolicy.execute(() -> {
+      attempts.incrementAndGet();
+      return CompletableFuture.failedFuture(new IOException("connection reset"));
+    });
+
+    assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+    assertThat(attempts).hasValue(3);
+  }
+}
@@ -0,0 +1,135 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedCacheTierTest {
+  private static final KeywordList KEYWORDS = new KeywordList(new String[]{"sky", "cloud"}, new double[]{42.5, 12.0});
+
+  private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+  // A single thread executes the operations in order, so a get sees
+  // preceding puts.
+  private final SharedCacheTier tier = new SharedCacheTier(new MapSharedCache(entries), 1);
+
+  @AfterEach
+  void tearDown() {
+    tier.shutdown();
+  }
+
+  @Test
+  void valuesRoundTrip() {
+    tier.putString("upload-id", "i123", Duration.ofHours(1));
+    tier.putKeywords("tags", KEYWORDS, Duration.ofHours(1));
+
+    SharedCacheTier.Hit<String> uploadId = tier.getString("upload-id").join();
+    assertThat(uploadId).isNotNull();
+    assertThat(uploadId.getValue()).isEqualTo("i123");
+    assertThat(uploadId.getTimeToLive()).isPositive().isLessThanOrEqualTo(Duration.ofHours(1));
+    SharedCacheTier.Hit<KeywordList> keywords = tier.getKeywords("tags").join();
+    assertThat(keywords).isNotNull();
+    assertThat(keywords.getValue()).isEqualTo(KEYWORDS);
+  }
+
+  @Test
+  void keysAreHashed() {
+    tier.putString("upload-id|etag|http://test|secret", "i123", Duration.ofHours(1));
+    tier.getString("upload-id|etag|http://test|secret").join();
+
+    assertThat(entries).hasSize(1);
+    assertThat(entries.keySet().iterator().next()).matches("[0-9a-f]{64}");
+  }
+
+  @Test
+  void missesAreNull() {
+    tier.putString("upload-id", "i123", Duration.ofHours(1));
+
+    assertThat(tier.getString("other").join()).isNull();
+    // a value of another type
+    assertThat(tier.getKeywords("upload-id").join()).isNull();
+  }
+
+  @Test
+  void expiredValuesAreMisses() {
+    tier.putString("upload-id", "i123", Duration.ofMillis(-1));
+
+    assertThat(tier.getString("upload-id").join()).isNull();
+  }
+
+  @Test
+  void removedValuesAreMisses() {
+    tier.putString("upload-id", "i123", Duration.ofHours(1));
+    tier.getString("upload-id").join();
+    tier.remove("upload-id");
+
+    assertThat(tier.getString("upload-id").join()).isNull();
+  }
+
+  @Test
+  void failuresAreMisses() {
+    SharedCacheTier failing = new SharedCacheTier(new SharedCache() {
+      @Override
+      public byte[] get(String key) throws IOException {
+        throw new IOException("unavailable");
+      }
+
+      @Override
+      public void put(String key, byte[] value, Duration timeToLive) throws IOException {
+        throw new IOException("unavailable");
+      }
+
+      @Override
+      public void remove(String key) throws IOException {
+        throw new IOException("unavailable");
+      }
+    }, 1);
+    try {
+      failing.putString("upload-id", "i123", Duration.ofHours(1));
+      failing.remove("upload-id");
+      assertThat(failing.getString("upload-id").join()).isNull();
+    } finally {
+      failing.shutdown();
+    }
+  }
+
+  @Test
+  void corruptValuesAreMisses() {
+    tier.putString("upload-id", "i123", Duration.ofHours(1));
+    tier.getString("upload-id").join();
+    entries.replaceAll((key, value) -> new byte[]{value[0], 0, 0});
+
+    assertThat(tier.getString("upload-id").join()).isNull();
+  }
+
+
+  // --- inner classes ----------------------------------------------
+
+  private static class MapSharedCache implements SharedCache {
+    private final Map<String, byte[]> entries;
+
+    MapSharedCache(Map<String, byte[]> entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public byte[] get(String key) {
+      return entries.get(key);
+    }
+
+    @Override
+    public void put(String key, byte[] value, Duration timeToLive) {
+      entries.put(key, value);
+    }
+
+    @Override
+    public void remove(String key) {
+      entries.remove(key);
+    }
+  }
+}
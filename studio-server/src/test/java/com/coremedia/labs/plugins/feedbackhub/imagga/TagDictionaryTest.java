@@ -0,0 +1,39 @@
+package com.coremedia.labs.plugins.feedbackhub.imagga;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TagDictionaryTest {
+  @Test
+  void internReturnsSameId() {
+    TagDictionary dictionary = new TagDictionary(10);
+    int sky = dictionary.intern("sky");
+    int cloud = dictionary.intern("cloud");
+
+    assertThat(sky).isNotEqualTo(cloud);
+    assertThat(dictionary.intern(new String("sky"))).isEqualTo(sky);
+    assertThat(dictionary.getName(sky)).isEqualTo("sky");
+    assertThat(dictionary.getName(cloud)).isEqualTo("cloud");
+  }
+
+  @Test
+  void internGrows() {
+    TagDictionary dictionary = new TagDictionary(5000);
+    for (int i = 0; i < 5000; i++) {
+      assertThat(dictionary.intern("tag" + i)).isEqualTo(i);
+    }
+
+    assertThat(dictionary.getName(4999)).isEqualTo("tag4999");
+    assertThat(dictionary.size()).isEqualTo(5000);
+  }
+
+  @Test
+  void fullDictionaryDoesNotIntern() {
+    TagDictionary dictionary = new TagDictionary(1);
+    int sky = dictionary.intern("sky");
+
+    assertThat(dictionary.intern("cloud")).isEqualTo(TagDictionary.NOT_INTERNED);
+    assertThat(dictionary.intern("sky")).isEqualTo(sky);
+  }
+}